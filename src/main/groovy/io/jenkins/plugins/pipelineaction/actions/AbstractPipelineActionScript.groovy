@@ -29,12 +29,16 @@ import io.jenkins.plugins.pipelineaction.PipelineActionType
 import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted
 import org.jenkinsci.plugins.workflow.cps.CpsScript
 
+import java.util.logging.Level
+import java.util.logging.Logger
+
 /**
  * An abstract class that all {@link PipelineAction}s will inherit from - provides convenience methods, configuration variables,
  * argument and required argument handling.
  */
 @SuppressFBWarnings(value="SE_NO_SERIALVERSIONID")
 public abstract class AbstractPipelineActionScript implements Serializable {
+    private static final Logger LOGGER = Logger.getLogger(AbstractPipelineActionScript.class.getName())
 
     /**
      * Used for all Pipeline step invocation.
@@ -50,8 +54,10 @@ public abstract class AbstractPipelineActionScript implements Serializable {
      *
      * Can be overridden explicitly for actions coming from the global library or other sources where they don't have
      * a corresponding {@link PipelineAction}.
+     *
+     * Not serialized if it came from a registered {@link PipelineAction} - see {@link #registryBacked}.
      */
-    Map<String,Boolean> actionFields
+    transient Map<String,Boolean> actionFields
 
     /**
      * True if this action needs to be run in a node context. Default is true.
@@ -61,7 +67,7 @@ public abstract class AbstractPipelineActionScript implements Serializable {
      *
      * NOTE: not currently used anywhere. Working on how that will end up looking down the road.
      */
-    Boolean actionUsesNode = true
+    transient Boolean actionUsesNode = true
 
     /**
      * The {@link PipelineActionType} for this action. Default is {@code PipelineActionType.STANDARD}
@@ -71,7 +77,7 @@ public abstract class AbstractPipelineActionScript implements Serializable {
      *
      * NOTE: not currently used anywhere. Working on how that will end up looking down the road.
      */
-    PipelineActionType actionType = PipelineActionType.STANDARD
+    transient PipelineActionType actionType = PipelineActionType.STANDARD
 
     /**
      * The name of the action, as used in the "runPipelineAction(...)" step.
@@ -83,6 +89,24 @@ public abstract class AbstractPipelineActionScript implements Serializable {
      */
     String actionStepName
 
+    /**
+     * The generation of the {@link PipelineAction} this script was created from - see
+     * {@link PipelineAction#getGeneration()}.
+     */
+    long actionGeneration
+
+    /**
+     * True if our metadata came from a registered {@link PipelineAction} and hasn't been overridden since. In that
+     * case only {@link #actionStepName} and {@link #actionGeneration} are serialized with the Pipeline program, and
+     * the rest is looked up from the registry again when first needed after a resume.
+     */
+    boolean registryBacked
+
+    /**
+     * False after deserialization until the metadata has been looked up again.
+     */
+    private transient boolean metadataLoaded = true
+
     /**
      * Creates a new {@link AbstractPipelineActionScript} instance from a {@link CpsScript} and an optional
      * {@link PipelineAction}. If the {@link PipelineAction} is given, we use its values for our fields.
@@ -93,10 +117,145 @@ public abstract class AbstractPipelineActionScript implements Serializable {
     public AbstractPipelineActionScript(CpsScript script, PipelineAction actionDefinition = null) {
         this.script = script
         if (actionDefinition != null) {
-            this.actionFields = actionDefinition.getFields()
-            this.actionUsesNode = actionDefinition.usesNode()
-            this.actionType = actionDefinition.pipelineActionType()
+            loadMetadata(actionDefinition)
             this.actionStepName = actionDefinition.getName()
+            this.actionGeneration = actionDefinition.getGeneration()
+            this.registryBacked = true
+        }
+    }
+
+    private void loadMetadata(PipelineAction actionDefinition) {
+        this.actionFields = actionDefinition.getFields()
+        this.actionUsesNode = actionDefinition.usesNode()
+        this.actionType = actionDefinition.pipelineActionType()
+        this.metadataLoaded = true
+    }
+
+    /**
+     * Looks our metadata up from the registry again if it wasn't serialized - from the generation we were created
+     * from, if it's still around, so that a resumed build keeps seeing the fields it started with.
+     */
+    private void rehydrate() {
+        if (!metadataLoaded && registryBacked) {
+            PipelineAction actionDefinition = PipelineAction.getPipelineAction(actionStepName, PipelineActionType.ANY)
+            if (actionDefinition != null && actionDefinition.getGeneration() != actionGeneration) {
+                PipelineAction recorded = PipelineAction.getPipelineAction(actionStepName, actionGeneration)
+                if (recorded != null) {
+                    actionDefinition = recorded
+                } else {
+                    LOGGER.log(Level.WARNING, "Generation {0} of pipeline action ''{1}'' is no longer available - "
+                            + "using generation {2} instead, whose fields may differ.",
+                            [actionGeneration, actionStepName, actionDefinition.getGeneration()] as Object[])
+                }
+            }
+            if (actionDefinition == null) {
+                throw new IllegalStateException("Pipeline action '" + actionStepName + "' is no longer registered.")
+            }
+            loadMetadata(actionDefinition)
+        }
+    }
+
+    Map<String,Boolean> getActionFields() {
+        rehydrate()
+        return actionFields
+    }
+
+    void setActionFields(Map<String,Boolean> actionFields) {
+        rehydrate()
+        this.actionFields = actionFields
+        this.registryBacked = false
+    }
+
+    Boolean getActionUsesNode() {
+        rehydrate()
+        return actionUsesNode
+    }
+
+    void setActionUsesNode(Boolean actionUsesNode) {
+        rehydrate()
+        this.actionUsesNode = actionUsesNode
+        this.registryBacked = false
+    }
+
+    PipelineActionType getActionType() {
+        rehydrate()
+        return actionType
+    }
+
+    void setActionType(PipelineActionType actionType) {
+        rehydrate()
+        this.actionType = actionType
+        this.registryBacked = false
+    }
+
+    /**
+     * Written after the fields by {@link #writeObject}, ahead of any metadata that isn't looked up from the registry.
+     * Streams written before metadata could be looked up have no such marker - and no custom data at all.
+     */
+    private static final int STREAM_VERSION = 1
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject()
+        out.writeInt(STREAM_VERSION)
+        if (!registryBacked) {
+            out.writeObject(actionFields)
+            out.writeObject(actionUsesNode)
+            out.writeObject(actionType)
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = input.readFields()
+        script = (CpsScript) fields.get('script', (Object) null)
+        actionStepName = (String) fields.get('actionStepName', (Object) null)
+        actionGeneration = fields.get('actionGeneration', 0L)
+
+        if (fields.defaulted('registryBacked')) {
+            // The old format, from before metadata was looked up from the registry - it's all in plain fields.
+            actionFields = (Map<String,Boolean>) fields.get('actionFields', (Object) null)
+            actionUsesNode = (Boolean) fields.get('actionUsesNode', (Object) Boolean.TRUE)
+            actionType = (PipelineActionType) fields.get('actionType', (Object) PipelineActionType.STANDARD)
+            legacyLoaded()
+            return
+        }
+        registryBacked = fields.get('registryBacked', false)
+
+        try {
+            input.readInt()
+        } catch (EOFException e) {
+            // No marker - nothing else was written either.
+            legacyLoaded()
+            return
+        }
+        if (registryBacked) {
+            metadataLoaded = false
+            return
+        }
+        try {
+            actionFields = (Map<String,Boolean>) input.readObject()
+            actionUsesNode = (Boolean) input.readObject()
+            actionType = (PipelineActionType) input.readObject()
+            metadataLoaded = true
+        } catch (OptionalDataException e) {
+            if (!e.eof) {
+                throw e
+            }
+            legacyLoaded()
+        }
+    }
+
+    /**
+     * Finishes reading a stream without our own data - keeping any metadata it had, or else looking it up from the
+     * registry by name when first needed.
+     */
+    private void legacyLoaded() {
+        if (actionFields == null && actionStepName != null) {
+            registryBacked = true
+            metadataLoaded = false
+        } else {
+            registryBacked = false
+            metadataLoaded = true
         }
     }
 
@@ -108,7 +267,7 @@ public abstract class AbstractPipelineActionScript implements Serializable {
      */
     @Whitelisted
     public Map copySpecifiedArgs(Map<String,Object> origArgs) {
-        return origArgs.findAll { it.key in actionFields.keySet() }
+        return origArgs.findAll { it.key in getActionFields().keySet() }
     }
 
     /**
@@ -132,7 +291,7 @@ public abstract class AbstractPipelineActionScript implements Serializable {
      */
     @Whitelisted
     public List<String> requiredArgs() {
-        return actionFields.findAll { it.value }.collect { it.key }
+        return getActionFields().findAll { it.value }.collect { it.key }
     }
 
     public static final serialVersionUID = 1L
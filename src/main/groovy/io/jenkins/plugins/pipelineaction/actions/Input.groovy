@@ -43,11 +43,16 @@ public class Input extends PipelineAction {
     @Override
     public Map<String, Boolean> getFields() {
         return [
-                message:   true,
+                message:        true,
 
-                id:        false,
-                ok:        false,
-                submitter: false
+                id:             false,
+                ok:             false,
+                submitter:      false,
+
+                timeout:        false,
+                timeoutUnit:    false,
+                defaultOutcome: false,
+                holdExecutor:   false
         ]
     }
 
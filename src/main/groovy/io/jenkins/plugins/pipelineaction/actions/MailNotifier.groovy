@@ -26,6 +26,7 @@ package io.jenkins.plugins.pipelineaction.actions
 import hudson.Extension
 import io.jenkins.plugins.pipelineaction.PipelineAction
 import io.jenkins.plugins.pipelineaction.PipelineActionType
+import io.jenkins.plugins.pipelineaction.notifications.NotificationSender
 
 
 @Extension
@@ -61,4 +62,10 @@ public class MailNotifier extends PipelineAction {
     public PipelineActionType pipelineActionType() {
         return PipelineActionType.NOTIFIER;
     }
+
+    @Override
+    public NotificationSender getNotificationSender() {
+        // Registered only when Mailer is installed - otherwise the action runs its script as usual.
+        return NotificationSender.forAction(getName());
+    }
 }
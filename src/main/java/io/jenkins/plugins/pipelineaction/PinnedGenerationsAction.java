@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the generation of each {@link PipelineActionSet} a build is pinned to, so that actions changing
+ * mid-build don't affect it. Pins are released when the build completes.
+ *
+ * Pins are saved with the build. Generation numbers don't survive a restart, so each pin also records the
+ * {@link PipelineActionGenerations#getDigest(long) digest} of its generation - a resumed build moves to a current
+ * generation only if it has the same definitions, and fails otherwise.
+ */
+public class PinnedGenerationsAction extends InvisibleAction {
+    private static final Logger LOGGER = Logger.getLogger(PinnedGenerationsAction.class.getName());
+
+    /**
+     * Pinned generation numbers, keyed by {@link PipelineActionSet} class name.
+     */
+    private final Map<String,Long> pinned = new HashMap<String,Long>();
+
+    /**
+     * Digests of the pinned generations, keyed like {@link #pinned}. Null for builds saved before digests were kept.
+     */
+    private Map<String,String> digests = new HashMap<String,String>();
+
+    public synchronized Map<String,Long> getPinned() {
+        return new HashMap<String,Long>(pinned);
+    }
+
+    /**
+     * Gets the generation of the given set the build is pinned to, pinning one if needed.
+     */
+    static long pin(Run<?,?> run, PipelineActionSet set, PipelineActionGenerations generations) {
+        PinnedGenerationsAction a;
+        synchronized (run) {
+            a = run.getAction(PinnedGenerationsAction.class);
+            if (a == null) {
+                a = new PinnedGenerationsAction();
+                run.addAction(a);
+            }
+        }
+
+        String key = set.getClass().getName();
+        long n;
+        synchronized (a) {
+            Long existing = a.pinned.get(key);
+            if (existing != null && generations.getActions(existing) != null) {
+                return existing;
+            }
+            n = generations.pinFor(run.getExternalizableId());
+            String digest = generations.getDigest(n);
+            // The pinned generation is gone if we've restarted since - only move to a current one with the same
+            // definitions.
+            String pinnedDigest = existing != null && a.digests != null ? a.digests.get(key) : null;
+            if (pinnedDigest != null && !pinnedDigest.equals(digest)) {
+                generations.unpin(n);
+                throw new IllegalStateException(run + " was using actions from " + set.getClass().getName()
+                        + " that changed while Jenkins was restarting, so it cannot be resumed");
+            }
+            a.pinned.put(key, n);
+            if (a.digests == null) {
+                a.digests = new HashMap<String,String>();
+            }
+            a.digests.put(key, digest);
+        }
+
+        try {
+            run.save();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save the pinned generations of " + run, e);
+        }
+        return n;
+    }
+
+    /**
+     * Releases the build's pins once it completes.
+     */
+    @Extension
+    public static class Releaser extends RunListener<Run<?,?>> {
+        @Override
+        public void onCompleted(Run<?,?> run, TaskListener listener) {
+            PinnedGenerationsAction a = run.getAction(PinnedGenerationsAction.class);
+            if (a == null) {
+                return;
+            }
+
+            Map<String,Long> pinned = a.getPinned();
+            for (PipelineActionSet set : ExtensionList.lookup(PipelineActionSet.class)) {
+                Long n = pinned.get(set.getClass().getName());
+                PipelineActionGenerations generations = set.getGenerations();
+                if (n != null && generations != null) {
+                    generations.unpin(n);
+                }
+            }
+        }
+    }
+}
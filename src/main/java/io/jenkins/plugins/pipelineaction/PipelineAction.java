@@ -28,18 +28,29 @@ import groovy.lang.GroovyCodeSource;
 import groovy.lang.GroovyShell;
 import hudson.ExtensionList;
 import hudson.ExtensionPoint;
+import hudson.Util;
+import hudson.model.Run;
 import hudson.util.Iterators;
+import io.jenkins.plugins.pipelineaction.flyweight.FlyweightAction;
+import io.jenkins.plugins.pipelineaction.notifications.NotificationSender;
 import org.codehaus.groovy.control.MultipleCompilationErrorsException;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
 import org.jenkinsci.plugins.workflow.cps.CpsScript;
 import org.jenkinsci.plugins.workflow.cps.CpsThread;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.net.URL;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.apache.commons.lang.exception.ExceptionUtils.getFullStackTrace;
 
@@ -100,6 +111,127 @@ public abstract class PipelineAction implements ExtensionPoint {
         return true;
     }
 
+    /**
+     * The relative cost of this action, e.g. its typical duration in minutes. When scheduling caps are configured,
+     * cheaper node-using actions are let through first - see {@link io.jenkins.plugins.pipelineaction.policy.ActionScheduler}.
+     *
+     * @return The cost. Defaults to 1.
+     */
+    public int getCost() {
+        return 1;
+    }
+
+    /**
+     * Controller-side implementation of this action, for actions that don't use a node. If provided, and
+     * {@link #usesNode()} is false, "runPipelineAction" runs it directly on a controller thread pool as a single step
+     * instead of running the action's script.
+     *
+     * @return The flyweight, or null by default.
+     */
+    public FlyweightAction getFlyweight() {
+        return null;
+    }
+
+    /**
+     * The generation of the {@link PipelineActionSet} this action was loaded in. Actions whose definitions can change
+     * at runtime, such as those from the global library, get a new generation each time they're reloaded, so that
+     * a running build can tell whether it's still using the same definition.
+     *
+     * @return The generation. Defaults to 0, for actions that can't change without a restart.
+     */
+    public long getGeneration() {
+        return 0;
+    }
+
+    /**
+     * Maximum time this action may run for before it's aborted, in seconds. Can be overridden with
+     * "policy: [timeout: ...]" in the "runPipelineAction" arguments.
+     *
+     * @return The timeout in seconds, or 0 for no timeout. Defaults to 0.
+     */
+    public int getTimeoutSeconds() {
+        return 0;
+    }
+
+    /**
+     * Number of times to retry this action if it fails or times out. Can be overridden with
+     * "policy: [retries: ...]" in the "runPipelineAction" arguments.
+     *
+     * @return The number of retries. Defaults to 0.
+     */
+    public int getRetries() {
+        return 0;
+    }
+
+    /**
+     * Delay before the first retry of this action, in seconds. Doubled on each further retry. Can be overridden with
+     * "policy: [backoff: ...]" in the "runPipelineAction" arguments.
+     *
+     * The backoff is waited out where the action was called - inside a node block, that executor stays held, so keep
+     * it short for actions called inside one.
+     *
+     * @return The initial backoff in seconds. Defaults to 10.
+     */
+    public int getRetryBackoffSeconds() {
+        return 10;
+    }
+
+    /**
+     * If true, repeated failures of this action across all builds open a
+     * {@link io.jenkins.plugins.pipelineaction.policy.CircuitBreaker}, so that further invocations fail fast rather
+     * than waiting on a degraded service. Can be overridden with "policy: [circuitBreaker: ...]" in the
+     * "runPipelineAction" arguments.
+     *
+     * @return True if this action should use the circuit breaker. Defaults to false.
+     */
+    public boolean usesCircuitBreaker() {
+        return false;
+    }
+
+    /**
+     * If this action is a deterministic function of its arguments and its input files, this should be true. The
+     * results of cacheable actions are stored by "runPipelineAction", and later invocations with the same arguments
+     * and inputs skip the action entirely, restoring its outputs from the cache instead.
+     *
+     * Since the action isn't run on a cache hit, its return value is not available - cacheable actions should
+     * produce their results as files matching {@link #getCacheOutputs()}.
+     *
+     * @return True if this action's results can be cached. Defaults to false.
+     */
+    public boolean isCacheable() {
+        return false;
+    }
+
+    /**
+     * The input files of a cacheable action, whose contents are part of the cache key.
+     *
+     * @return Comma-separated Ant-style patterns relative to the workspace, or null if the action only depends on its
+     * arguments.
+     */
+    public String getCacheInputs() {
+        return null;
+    }
+
+    /**
+     * The output files of a cacheable action, which are restored into the workspace on a cache hit.
+     *
+     * @return Comma-separated Ant-style patterns relative to the workspace, or null if the action has no outputs.
+     */
+    public String getCacheOutputs() {
+        return null;
+    }
+
+    /**
+     * Get the controller-side {@link NotificationSender} for this action, if it has one. Only used for
+     * {@link PipelineActionType#NOTIFIER} actions - if a sender is provided, notifications from this action can be
+     * coalesced and rate limited rather than sent from the Pipeline one at a time.
+     *
+     * @return The {@link NotificationSender} for this action, or null by default.
+     */
+    public NotificationSender getNotificationSender() {
+        return null;
+    }
+
     /**
      * Get the {@link GroovyCodeSource} for this pipeline action. Returns the existing one if it's not null.
      * Throws an {@link IllegalStateException} if the script can't be loaded.
@@ -130,7 +262,9 @@ public abstract class PipelineAction implements ExtensionPoint {
 
     /**
      * ONLY TO BE RUN FROM WITHIN A CPS THREAD. Parses the script source and loads it.
-     * TODO: Decide if we want to cache the resulting objects or just *shrug* and re-parse them every time.
+     *
+     * The script is only compiled here, when the Pipeline actually calls into the action - including after a resume -
+     * and the blacklist validation is only done once per version of the source, see {@link #validate(GroovyShell)}.
      *
      * @return The script object for this pipeline action.
      * @throws Exception if the script source cannot be loaded or we're called from outside a CpsThread.
@@ -142,19 +276,67 @@ public abstract class PipelineAction implements ExtensionPoint {
         if (c == null)
             throw new IllegalStateException("Expected to be called from CpsThread");
 
-        // Recreate the GroovyShell and validate that the PipelineAction doesn't have blacklisted steps.
         GroovyShell origShell = c.getExecution().getShell();
-        GroovyShell validationShell = StepBlacklister.getBlacklisterShell(origShell);
+        validate(origShell);
+
+        return origShell.getClassLoader()
+                .parseClass(getScriptSource())
+                .getConstructor(CpsScript.class, PipelineAction.class)
+                .newInstance(cpsScript, this);
+    }
+
+    /**
+     * Validates that the PipelineAction doesn't have blacklisted steps, using a copy of the given shell set up by
+     * {@link StepBlacklister}. Passing is remembered for this version of the action's source, so each version is
+     * only compiled for validation once rather than on every invocation in every build.
+     *
+     * @param baseShell The shell to base the validation shell on.
+     * @throws IllegalArgumentException if the action uses blacklisted steps.
+     * @throws Exception if the script source cannot be loaded.
+     */
+    public void validate(GroovyShell baseShell) throws Exception {
+        String key = getName() + '@' + getGeneration() + ':' + Util.getDigestOf(getScriptSource().getScriptText());
+
+        if (VALIDATED.containsKey(key)) {
+            return;
+        }
+
+        GroovyShell validationShell = StepBlacklister.getBlacklisterShell(baseShell);
         try {
             validationShell.getClassLoader().parseClass(getScriptSource());
         } catch (MultipleCompilationErrorsException e) {
+            // Failures aren't remembered - they may depend on the shell's classpath, and fail the build anyway.
             throw new IllegalArgumentException("Blacklisted steps used in action - " + e.getMessage());
         }
+        if (VALIDATED.put(key, getGeneration()) == null) {
+            evictValidated();
+        }
+    }
 
-        return origShell.getClassLoader()
-                .parseClass(getScriptSource())
-                .getConstructor(CpsScript.class, PipelineAction.class)
-                .newInstance(cpsScript, this);
+    /**
+     * Keys of the action sources that have passed validation - action name, generation and source digest - with the
+     * generation they're for.
+     */
+    private static final ConcurrentMap<String,Long> VALIDATED = new ConcurrentHashMap<String,Long>();
+
+    /**
+     * Forgets validations of generations that no {@link PipelineActionSet} retains any more - no build can use them.
+     */
+    private static void evictValidated() {
+        Set<Long> retained = new HashSet<Long>();
+        retained.add(0L);
+        for (PipelineActionSet actionSet : ExtensionList.lookup(PipelineActionSet.class)) {
+            PipelineActionGenerations generations = actionSet.getGenerations();
+            if (generations != null) {
+                retained.addAll(generations.getRetained());
+            }
+        }
+
+        for (Iterator<Long> it = VALIDATED.values().iterator(); it.hasNext(); ) {
+            if (!retained.contains(it.next())) {
+                it.remove();
+            }
+        }
     }
 
     /**
@@ -166,8 +348,7 @@ public abstract class PipelineAction implements ExtensionPoint {
             return new Iterators.FlattenIterator<PipelineAction, PipelineActionSet>(ExtensionList.lookup(PipelineActionSet.class).iterator()) {
                 @Override
                 protected Iterator<PipelineAction> expand(PipelineActionSet actionSet) {
-                    // TODO: Make this not a hack.
-                    actionSet.rebuild();
+                    actionSet.maybeRefresh();
                     return actionSet.iterator();
                 }
             };
@@ -180,22 +361,66 @@ public abstract class PipelineAction implements ExtensionPoint {
      * @return All {@link PipelineAction}s keyed by name.
      */
     public static Map<String,PipelineAction> pipelineActionMap() {
+        return pipelineActionMap(null);
+    }
+
+    /**
+     * Returns a map of the {@link PipelineAction}s visible to the given build by name - for {@link PipelineActionSet}s
+     * that change at runtime, that's the generation the build is pinned to.
+     *
+     * @param run The build, or null for the current actions.
+     * @return The {@link PipelineAction}s keyed by name.
+     */
+    public static Map<String,PipelineAction> pipelineActionMap(@CheckForNull Run<?,?> run) {
         Map<String,PipelineAction> m = new HashMap<String, PipelineAction>();
 
-        for (PipelineAction p : ALL) {
-            m.put(p.getName(), p);
+        for (PipelineActionSet actionSet : ExtensionList.lookup(PipelineActionSet.class)) {
+            actionSet.maybeRefresh();
+            for (PipelineAction p : actionSet.getActions(run)) {
+                m.put(p.getName(), p);
+            }
         }
 
         return m;
     }
 
     /**
-     * Finds a {@link PipelineAction} with the given name.
+     * Finds the {@link PipelineAction} with the given name in a specific generation, e.g. the one a resumed build's
+     * script was created from.
+     *
+     * @param name The name of the pipeline action.
+     * @param generation The generation - see {@link #getGeneration()}.
+     * @return The action, or null if no {@link PipelineActionSet} still retains that generation of it.
+     */
+    @CheckForNull
+    public static PipelineAction getPipelineAction(String name, long generation) {
+        for (PipelineActionSet actionSet : ExtensionList.lookup(PipelineActionSet.class)) {
+            PipelineActionGenerations generations = actionSet.getGenerations();
+            List<PipelineAction> actions = generations != null ? generations.getActions(generation) : null;
+            if (actions != null) {
+                for (PipelineAction p : actions) {
+                    if (p.getName().equals(name)) {
+                        return p;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a {@link PipelineAction} with the given name, as seen by the current build if there is one.
      *
      * @return The pipeline action for the given name if it exists.
      */
     private static PipelineAction getPipelineActionFromName(String name) {
-        return pipelineActionMap().get(name);
+        Run<?,?> run;
+        try {
+            run = PipelineActionContext.currentRun();
+        } catch (IOException e) {
+            run = null;
+        }
+        return pipelineActionMap(run).get(name);
     }
 
     /**
@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction;
+
+import hudson.model.Queue;
+import hudson.model.Run;
+import org.jenkinsci.plugins.workflow.cps.CpsThread;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import java.io.IOException;
+
+/**
+ * Helpers for finding out which build a {@link PipelineAction} is being run in. Only meaningful when called from
+ * within a {@link CpsThread}, i.e., from {@code @NonCPS} methods of the action scripts.
+ */
+@Restricted(NoExternalUse.class)
+public final class PipelineActionContext {
+
+    private PipelineActionContext() {
+    }
+
+    /**
+     * Gets the {@link Run} owning the current {@link CpsThread}.
+     *
+     * @return The current run, or null if we're not in a CpsThread or the owner isn't a {@link Run}.
+     * @throws IOException if the owning execution can't be loaded.
+     */
+    @CheckForNull
+    public static Run<?,?> currentRun() throws IOException {
+        CpsThread c = CpsThread.current();
+        if (c == null) {
+            return null;
+        }
+
+        Queue.Executable exec = c.getExecution().getOwner().getExecutable();
+        if (exec instanceof Run) {
+            return (Run<?,?>) exec;
+        }
+
+        return null;
+    }
+}
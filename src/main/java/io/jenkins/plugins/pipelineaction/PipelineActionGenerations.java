@@ -0,0 +1,267 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction;
+
+import hudson.Util;
+
+import javax.annotation.CheckForNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable generations of the {@link PipelineAction}s in a {@link PipelineActionSet} whose definitions can change at
+ * runtime. New generations are published atomically, builds pin the generation they started with, and generations
+ * are dropped once they're neither current nor pinned by any build.
+ *
+ * If {@link #CANARY_PERCENT} is set, a newly published generation is first only handed out to that share of new
+ * builds, and becomes the stable generation for everyone after {@link #CANARY_PROMOTE_SECONDS} or when
+ * {@link #promote()} is called.
+ *
+ * Reads never block - all state is published as immutable snapshots.
+ */
+public final class PipelineActionGenerations {
+
+    /**
+     * Percentage of new builds that get a newly published generation before it's promoted. 0 disables canaries.
+     */
+    public static /* non-final for script console */ int CANARY_PERCENT =
+            Integer.getInteger(PipelineActionGenerations.class.getName() + ".canaryPercent", 0);
+
+    /**
+     * How long a canary generation is held back before it's promoted automatically, in seconds.
+     */
+    public static /* non-final for script console */ int CANARY_PROMOTE_SECONDS =
+            Integer.getInteger(PipelineActionGenerations.class.getName() + ".canaryPromoteSeconds", 3600);
+
+    /**
+     * A single immutable generation.
+     */
+    private static final class Generation {
+        final long number;
+        final List<PipelineAction> actions;
+        final long publishedAt;
+        final String digest;
+
+        Generation(long number, List<PipelineAction> actions) {
+            this.number = number;
+            this.actions = actions;
+            this.publishedAt = System.currentTimeMillis();
+            this.digest = digestOf(actions);
+        }
+    }
+
+    /**
+     * A consistent view of the generations - replaced as a whole on every change.
+     */
+    private static final class Snapshot {
+        final Generation stable;
+        final Generation canary;
+        final Map<Long,Generation> retained;
+
+        Snapshot(Generation stable, Generation canary, Map<Long,Generation> retained) {
+            this.stable = stable;
+            this.canary = canary;
+            this.retained = retained;
+        }
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(null, null, Collections.<Long,Generation>emptyMap());
+
+    /**
+     * Number of builds pinning each generation. Guarded by {@code this}.
+     */
+    private final Map<Long,Integer> pins = new HashMap<Long,Integer>();
+
+    /**
+     * Publishes a new generation. It becomes the stable generation straight away, unless canaries are enabled and
+     * there's already a stable generation, in which case it replaces any existing canary.
+     *
+     * @param number The generation number - must be greater than any previously published.
+     * @param actions The actions in this generation.
+     */
+    public synchronized void publish(long number, List<PipelineAction> actions) {
+        Generation g = new Generation(number, Collections.unmodifiableList(actions));
+        Snapshot s = snapshot;
+        if (CANARY_PERCENT > 0 && s.stable != null) {
+            snapshot = retain(s.stable, g);
+        } else {
+            snapshot = retain(g, null);
+        }
+    }
+
+    /**
+     * Makes the current canary generation, if any, the stable generation.
+     */
+    public synchronized void promote() {
+        Snapshot s = snapshot;
+        if (s.canary != null) {
+            snapshot = retain(s.canary, null);
+        }
+    }
+
+    /**
+     * @return The stable generation number, or 0 if nothing's been published.
+     */
+    public long getStable() {
+        Generation g = snapshot.stable;
+        return g != null ? g.number : 0;
+    }
+
+    /**
+     * @return The canary generation number, or 0 if there's no canary.
+     */
+    public long getCanary() {
+        Generation g = snapshot.canary;
+        return g != null ? g.number : 0;
+    }
+
+    /**
+     * @return The actions in the stable generation.
+     */
+    public List<PipelineAction> getActions() {
+        Generation g = snapshot.stable;
+        return g != null ? g.actions : Collections.<PipelineAction>emptyList();
+    }
+
+    /**
+     * @param number A generation number.
+     * @return The actions in that generation, or null if it's no longer retained.
+     */
+    @CheckForNull
+    public List<PipelineAction> getActions(long number) {
+        Generation g = snapshot.retained.get(number);
+        return g != null ? g.actions : null;
+    }
+
+    /**
+     * @param number A generation number.
+     * @return A digest of the names and sources of the actions in that generation, or null if it's no longer
+     *         retained. Unlike generation numbers, which only live in memory, this stays the same across restarts for
+     *         the same definitions.
+     */
+    @CheckForNull
+    public String getDigest(long number) {
+        Generation g = snapshot.retained.get(number);
+        return g != null ? g.digest : null;
+    }
+
+    /**
+     * @return The numbers of all generations currently retained.
+     */
+    public List<Long> getRetained() {
+        return new ArrayList<Long>(snapshot.retained.keySet());
+    }
+
+    /**
+     * Chooses the generation a new build should use - the canary for {@link #CANARY_PERCENT} of builds, chosen
+     * consistently by the build's ID, and the stable generation for the rest - and pins it.
+     *
+     * @param buildId An identifier for the build, e.g. {@link hudson.model.Run#getExternalizableId()}.
+     * @return The pinned generation number, or 0 if nothing's been published.
+     */
+    public synchronized long pinFor(String buildId) {
+        Snapshot s = snapshot;
+        if (s.canary != null && System.currentTimeMillis() - s.canary.publishedAt
+                >= TimeUnit.SECONDS.toMillis(CANARY_PROMOTE_SECONDS)) {
+            promote();
+            s = snapshot;
+        }
+
+        Generation g = s.stable;
+        if (s.canary != null && (buildId.hashCode() & 0x7fffffff) % 100 < CANARY_PERCENT) {
+            g = s.canary;
+        }
+        if (g == null) {
+            return 0;
+        }
+
+        Integer n = pins.get(g.number);
+        pins.put(g.number, n != null ? n + 1 : 1);
+        return g.number;
+    }
+
+    /**
+     * Releases a build's pin on a generation, dropping the generation if nothing else needs it.
+     *
+     * @param number The generation number returned by {@link #pinFor(String)}.
+     */
+    public synchronized void unpin(long number) {
+        Integer n = pins.get(number);
+        if (n == null) {
+            return;
+        }
+        if (n <= 1) {
+            pins.remove(number);
+        } else {
+            pins.put(number, n - 1);
+        }
+        Snapshot s = snapshot;
+        if (s.stable != null) {
+            snapshot = retain(s.stable, s.canary);
+        }
+    }
+
+    /**
+     * Builds a new snapshot with the given stable and canary generations, keeping any others that are pinned.
+     */
+    private Snapshot retain(Generation stable, @CheckForNull Generation canary) {
+        Map<Long,Generation> retained = new HashMap<Long,Generation>();
+        for (Generation g : snapshot.retained.values()) {
+            if (pins.containsKey(g.number)) {
+                retained.put(g.number, g);
+            }
+        }
+        retained.put(stable.number, stable);
+        if (canary != null) {
+            retained.put(canary.number, canary);
+        }
+        return new Snapshot(stable, canary, Collections.unmodifiableMap(retained));
+    }
+
+    private static String digestOf(List<PipelineAction> actions) {
+        List<PipelineAction> sorted = new ArrayList<PipelineAction>(actions);
+        Collections.sort(sorted, new Comparator<PipelineAction>() {
+            @Override
+            public int compare(PipelineAction a, PipelineAction b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+
+        StringBuilder sb = new StringBuilder();
+        for (PipelineAction a : sorted) {
+            try {
+                sb.append(a.getName()).append(':').append(Util.getDigestOf(a.getScriptSource().getScriptText()));
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not read the source of " + a.getName(), e);
+            }
+            sb.append('\n');
+        }
+        return Util.getDigestOf(sb.toString());
+    }
+}
@@ -19,23 +19,124 @@ package io.jenkins.plugins.pipelineaction;
 import hudson.Extension;
 import hudson.ExtensionList;
 import hudson.ExtensionPoint;
+import hudson.model.Run;
+import jenkins.util.Timer;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
+import javax.annotation.CheckForNull;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A collection of {@link PipelineAction}s.
  */
 public abstract class PipelineActionSet implements ExtensionPoint, Iterable<PipelineAction> {
+    private static final Logger LOGGER = Logger.getLogger(PipelineActionSet.class.getName());
+
+    /**
+     * How long, in milliseconds, a set's actions can go unchecked before {@link #maybeRefresh()} checks them again.
+     */
+    public static /* non-final for script console */ int REFRESH_INTERVAL_MILLIS =
+            Integer.getInteger(PipelineActionSet.class.getName() + ".refreshIntervalMillis", 1000);
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile long lastRefreshed;
 
     /**
      * The default case does not need to actually rebuild anything.
      */
-    public synchronized void rebuild() {
+    public void rebuild() {
         // No-op for default.
     }
 
+    /**
+     * Makes sure this set's actions are no more than {@link #REFRESH_INTERVAL_MILLIS} out of date, without blocking.
+     * If they're due a check, and no other check is running, {@link #rebuild()} is run in the background - the caller
+     * carries on with the actions as they are. Only the very first call waits, so that there's something to use.
+     */
+    public final void maybeRefresh() {
+        if (lastRefreshed == 0) {
+            initialRefresh();
+            return;
+        }
+        if (System.currentTimeMillis() - lastRefreshed < REFRESH_INTERVAL_MILLIS
+                || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            Timer.get().submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        rebuild();
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Could not refresh " + PipelineActionSet.this.getClass().getName(), e);
+                    } finally {
+                        lastRefreshed = System.currentTimeMillis();
+                        refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+        }
+    }
+
+    private synchronized void initialRefresh() {
+        if (lastRefreshed == 0) {
+            try {
+                rebuild();
+            } finally {
+                lastRefreshed = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * The generations of this set, for sets whose definitions can change at runtime. If provided, each build sees
+     * the generation it first looked up an action in for the rest of the build - see {@link #getActions(Run)}.
+     *
+     * @return The generations, or null by default for sets that never change.
+     */
+    protected PipelineActionGenerations getGenerations() {
+        return null;
+    }
+
+    /**
+     * The current stable generation of this set - a new one is started each time {@link #rebuild()} loads new
+     * definitions.
+     *
+     * @return The current generation. 0 for sets that never change.
+     */
+    public long getGeneration() {
+        PipelineActionGenerations generations = getGenerations();
+        return generations != null ? generations.getStable() : 0;
+    }
+
+    /**
+     * Gets the actions a given build should see. For sets with {@link #getGenerations()}, that's the generation the
+     * build is pinned to, pinning one if it isn't yet. Otherwise it's just this set.
+     *
+     * @param run The build looking up actions, or null for the current stable generation.
+     * @return The actions visible to the build.
+     */
+    public Iterable<PipelineAction> getActions(@CheckForNull Run<?,?> run) {
+        PipelineActionGenerations generations = getGenerations();
+        if (generations == null || run == null) {
+            return this;
+        }
+
+        List<PipelineAction> actions = generations.getActions(PinnedGenerationsAction.pin(run, this, generations));
+        return actions != null ? actions : this;
+    }
+
     /**
      * For {@link PipelineAction}s contributed via the classpath.
      */
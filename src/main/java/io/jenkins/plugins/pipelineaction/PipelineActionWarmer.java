@@ -0,0 +1,202 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction;
+
+import groovy.lang.GroovyShell;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Queue;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.CodeVisitorSupport;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.MapEntryExpression;
+import org.codehaus.groovy.ast.expr.MapExpression;
+import org.codehaus.groovy.ast.expr.MethodCallExpression;
+import org.codehaus.groovy.ast.expr.TupleExpression;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.Phases;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowExecution;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.flow.FlowExecutionList;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * After a restart, validates the {@link PipelineAction}s that resumed builds are going to call, in the background, so
+ * that those builds don't all compile the same actions for validation at once when they next call into them. What a
+ * build will call is found by scanning its Jenkinsfile for "runPipelineAction" calls, using the generation the build
+ * is pinned to - actions it was in the middle of at the restart have already been restored along with its program, so
+ * they're only used as a fallback when the script can't be scanned. Actions needed by the most builds are done first.
+ *
+ * Only validation is warmed - the source and the validation cache. Parsed classes are not: each build still compiles
+ * an action into its own class loader when it calls it, via {@link PipelineAction#getScript}, since CPS-transformed
+ * classes can't be shared between builds.
+ */
+@Restricted(NoExternalUse.class)
+public final class PipelineActionWarmer {
+    private static final Logger LOGGER = Logger.getLogger(PipelineActionWarmer.class.getName());
+
+    private PipelineActionWarmer() {
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void warmResumedActions() {
+        final List<FlowExecution> executions = new ArrayList<FlowExecution>();
+        for (FlowExecution e : FlowExecutionList.get()) {
+            executions.add(e);
+        }
+        if (executions.isEmpty()) {
+            return;
+        }
+
+        Timer.get().submit(new Runnable() {
+            @Override
+            public void run() {
+                final Map<PipelineAction,Integer> demand = new HashMap<PipelineAction,Integer>();
+                for (FlowExecution e : executions) {
+                    try {
+                        Queue.Executable exec = e.getOwner().getExecutable();
+                        if (exec instanceof Run) {
+                            Map<String,PipelineAction> visible = PipelineAction.pipelineActionMap((Run<?,?>) exec);
+                            for (String name : upcomingActions(e, (Run<?,?>) exec)) {
+                                PipelineAction action = visible.get(name);
+                                if (action != null) {
+                                    Integer n = demand.get(action);
+                                    demand.put(action, (n != null ? n : 0) + 1);
+                                }
+                            }
+                        }
+                    } catch (IOException x) {
+                        LOGGER.log(Level.WARNING, "Could not load " + e.getOwner(), x);
+                    }
+                }
+
+                List<PipelineAction> actions = new ArrayList<PipelineAction>(demand.keySet());
+                Collections.sort(actions, new Comparator<PipelineAction>() {
+                    @Override
+                    public int compare(PipelineAction a, PipelineAction b) {
+                        return demand.get(b).compareTo(demand.get(a));
+                    }
+                });
+
+                GroovyShell shell = new GroovyShell(Jenkins.getInstance().getPluginManager().uberClassLoader);
+                for (PipelineAction action : actions) {
+                    try {
+                        action.validate(shell);
+                    } catch (Exception x) {
+                        // The build will get the same error when it calls the action.
+                        LOGGER.log(Level.FINE, "Could not warm pipeline action " + action.getName(), x);
+                    }
+                }
+                LOGGER.log(Level.FINE, "Warmed {0} pipeline action(s) for resumed builds", actions.size());
+            }
+        });
+    }
+
+    /**
+     * @return The names of the actions a resumed build may still call, each counted once.
+     */
+    private static Set<String> upcomingActions(FlowExecution e, Run<?,?> run) {
+        Set<String> names = new HashSet<String>();
+        if (e instanceof CpsFlowExecution) {
+            try {
+                scan(((CpsFlowExecution) e).getScript(), names);
+                return names;
+            } catch (RuntimeException x) {
+                LOGGER.log(Level.FINE, "Could not scan the script of " + run, x);
+            }
+        }
+
+        RunningPipelineActionsAction a = run.getAction(RunningPipelineActionsAction.class);
+        if (a != null) {
+            names.addAll(a.getRunning().keySet());
+        }
+        return names;
+    }
+
+    /**
+     * Adds the literal action names of the "runPipelineAction" calls in a Jenkinsfile, without running it.
+     */
+    private static void scan(String script, final Set<String> names) {
+        CompilationUnit cu = new CompilationUnit();
+        cu.addSource("Jenkinsfile", script);
+        cu.compile(Phases.CONVERSION);
+
+        CodeVisitorSupport visitor = new CodeVisitorSupport() {
+            @Override
+            public void visitMethodCallExpression(MethodCallExpression call) {
+                if ("runPipelineAction".equals(call.getMethodAsString())
+                        && call.getArguments() instanceof TupleExpression) {
+                    for (Expression arg : ((TupleExpression) call.getArguments()).getExpressions()) {
+                        if (arg instanceof MapExpression) {
+                            // Also covers named arguments.
+                            addName((MapExpression) arg, names);
+                        }
+                    }
+                }
+                super.visitMethodCallExpression(call);
+            }
+        };
+        for (ModuleNode module : cu.getAST().getModules()) {
+            for (ClassNode c : module.getClasses()) {
+                for (MethodNode m : c.getMethods()) {
+                    if (m.getCode() != null) {
+                        m.getCode().visit(visitor);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addName(MapExpression map, Set<String> names) {
+        for (MapEntryExpression entry : map.getMapEntryExpressions()) {
+            if (entry.getKeyExpression() instanceof ConstantExpression
+                    && "name".equals(((ConstantExpression) entry.getKeyExpression()).getValue())
+                    && entry.getValueExpression() instanceof ConstantExpression) {
+                Object name = ((ConstantExpression) entry.getValueExpression()).getValue();
+                if (name != null) {
+                    names.add(name.toString());
+                }
+            }
+        }
+    }
+}
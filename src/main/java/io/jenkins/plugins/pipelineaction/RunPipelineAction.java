@@ -31,9 +31,19 @@ import org.jenkinsci.plugins.workflow.cps.CpsScript;
 import org.jenkinsci.plugins.workflow.cps.GlobalVariable;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 @Extension
 public class RunPipelineAction extends GlobalVariable {
+    /**
+     * Arguments handled by "runPipelineAction" itself rather than passed on to the action.
+     */
+    public static final Set<String> DISPATCHER_ARGS = Collections.unmodifiableSet(
+            new HashSet<String>(Arrays.asList("name", "coalesce", "async", "cache", "policy", "light")));
+
     @Override
     public String getName() {
         return "runPipelineAction";
@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction;
+
+import hudson.Extension;
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records which {@link PipelineAction}s a build is currently running. Used after a restart as a fallback hint for
+ * which actions a resumed build is going to need, when its script can't be scanned - see {@link PipelineActionWarmer}.
+ *
+ * This is only a hint, so we don't save the build just for it - it's persisted whenever the build next saves, and
+ * removed once the build completes.
+ */
+public class RunningPipelineActionsAction extends InvisibleAction {
+    private final Map<String,Integer> running = new HashMap<String,Integer>();
+
+    /**
+     * @return The names of the actions currently running, with how many invocations of each are in progress.
+     */
+    public synchronized Map<String,Integer> getRunning() {
+        return new HashMap<String,Integer>(running);
+    }
+
+    private synchronized void started(String name) {
+        Integer n = running.get(name);
+        running.put(name, n != null ? n + 1 : 1);
+    }
+
+    private synchronized void finished(String name) {
+        Integer n = running.get(name);
+        if (n == null || n <= 1) {
+            running.remove(name);
+        } else {
+            running.put(name, n - 1);
+        }
+    }
+
+    /**
+     * Records that the current build has started running an action. ONLY TO BE RUN FROM WITHIN A CPS THREAD.
+     */
+    @Restricted(NoExternalUse.class)
+    public static void started(String name, @CheckForNull Run<?,?> run) {
+        if (run != null) {
+            RunningPipelineActionsAction a;
+            synchronized (run) {
+                a = run.getAction(RunningPipelineActionsAction.class);
+                if (a == null) {
+                    a = new RunningPipelineActionsAction();
+                    run.addAction(a);
+                }
+            }
+            a.started(name);
+        }
+    }
+
+    /**
+     * Records that the current build has finished running an action. ONLY TO BE RUN FROM WITHIN A CPS THREAD.
+     */
+    @Restricted(NoExternalUse.class)
+    public static void finished(String name, @CheckForNull Run<?,?> run) {
+        if (run != null) {
+            RunningPipelineActionsAction a = run.getAction(RunningPipelineActionsAction.class);
+            if (a != null) {
+                a.finished(name);
+            }
+        }
+    }
+
+    /**
+     * Drops the record once a build is over, so it doesn't stay in build.xml for good.
+     */
+    @Extension
+    public static class Remover extends RunListener<Run<?,?>> {
+        @Override
+        public void onCompleted(Run<?,?> run, @Nonnull TaskListener listener) {
+            RunningPipelineActionsAction a = run.getAction(RunningPipelineActionsAction.class);
+            if (a != null) {
+                run.getActions().remove(a);
+            }
+        }
+    }
+
+    @Restricted(NoExternalUse.class)
+    public static void started(String name) throws IOException {
+        started(name, PipelineActionContext.currentRun());
+    }
+
+    @Restricted(NoExternalUse.class)
+    public static void finished(String name) throws IOException {
+        finished(name, PipelineActionContext.currentRun());
+    }
+}
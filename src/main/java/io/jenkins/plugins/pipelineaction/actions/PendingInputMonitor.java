@@ -0,0 +1,303 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.actions;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.AdministrativeMonitor;
+import hudson.model.InvisibleAction;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import io.jenkins.plugins.pipelineaction.PipelineActionContext;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.flow.FlowExecutionList;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of builds waiting in the "input" action, so that the number and age of paused builds can be reported.
+ * Shows up under "Manage Jenkins" once a build has been waiting longer than {@link #STALE_HOURS}.
+ *
+ * Waits are also recorded on the build itself, so that builds still waiting after a restart are picked up again.
+ */
+@Extension
+public class PendingInputMonitor extends AdministrativeMonitor {
+    private static final Logger LOGGER = Logger.getLogger(PendingInputMonitor.class.getName());
+
+    /**
+     * Timeout applied to "input" actions that don't specify one, in minutes. 0 means wait forever.
+     */
+    public static /* non-final for script console */ int DEFAULT_TIMEOUT_MINUTES =
+            Integer.getInteger(PendingInputMonitor.class.getName() + ".defaultTimeoutMinutes", 0);
+
+    /**
+     * How long a build can wait for input before it's reported as stale, in hours.
+     */
+    public static /* non-final for script console */ int STALE_HOURS =
+            Integer.getInteger(PendingInputMonitor.class.getName() + ".staleHours", 24);
+
+    /**
+     * Waits currently in progress, keyed by the key returned from {@link #started(Run, String)}.
+     */
+    private final Map<String,Wait> waits = new ConcurrentHashMap<String,Wait>();
+
+    public static PendingInputMonitor get() {
+        return ExtensionList.lookup(PendingInputMonitor.class).get(PendingInputMonitor.class);
+    }
+
+    /**
+     * Records that the current build has started waiting for input. ONLY TO BE RUN FROM WITHIN A CPS THREAD.
+     *
+     * @param message The input message.
+     * @return A key to pass to {@link #finished(String)} once the wait is over.
+     * @throws IOException if the build can't be loaded or saved.
+     */
+    public String started(String message) throws IOException {
+        return started(PipelineActionContext.currentRun(), message);
+    }
+
+    /**
+     * Records that a build has started waiting for input.
+     *
+     * @param run The waiting build, if known.
+     * @param message The input message.
+     * @return A key to pass to {@link #finished(String)} once the wait is over.
+     * @throws IOException if the build can't be saved.
+     */
+    public String started(@CheckForNull Run<?,?> run, String message) throws IOException {
+        String key = UUID.randomUUID().toString();
+        Wait w = new Wait(key, run != null ? run.getExternalizableId() : null, message, System.currentTimeMillis());
+        waits.put(key, w);
+
+        if (run != null) {
+            synchronized (run) {
+                PendingInputAction a = run.getAction(PendingInputAction.class);
+                if (a == null) {
+                    a = new PendingInputAction();
+                    run.addAction(a);
+                }
+                a.add(w);
+            }
+            run.save();
+        }
+
+        return key;
+    }
+
+    /**
+     * Records that a wait has ended, whether through a response, a timeout or an abort.
+     *
+     * @param key The key returned from {@link #started(Run, String)}.
+     * @throws IOException if the build can't be saved.
+     */
+    public void finished(String key) throws IOException {
+        Wait w = waits.remove(key);
+        if (w != null && w.runId != null) {
+            Run<?,?> run = Run.fromExternalizableId(w.runId);
+            if (run != null) {
+                PendingInputAction a = run.getAction(PendingInputAction.class);
+                if (a != null && a.remove(key)) {
+                    run.save();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of builds currently waiting for input.
+     */
+    public int getWaitingCount() {
+        return waits.size();
+    }
+
+    /**
+     * @return How long the longest waiting build has been waiting, in milliseconds, or 0 if none are waiting.
+     */
+    public long getOldestWaitMillis() {
+        long oldest = 0;
+        long now = System.currentTimeMillis();
+        for (Wait w : waits.values()) {
+            oldest = Math.max(oldest, now - w.since);
+        }
+        return oldest;
+    }
+
+    /**
+     * @return The number of builds that have been waiting for longer than {@link #STALE_HOURS}.
+     */
+    public int getStaleCount() {
+        int stale = 0;
+        long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(STALE_HOURS);
+        for (Wait w : waits.values()) {
+            if (w.since < cutoff) {
+                stale++;
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * @return How long each waiting build has been waiting, in milliseconds, keyed by {@link Run#getExternalizableId()}.
+     */
+    public Map<String,Long> getWaitingBuilds() {
+        Map<String,Long> result = new HashMap<String,Long>();
+        long now = System.currentTimeMillis();
+        for (Wait w : waits.values()) {
+            if (w.runId != null) {
+                Long existing = result.get(w.runId);
+                long age = now - w.since;
+                if (existing == null || existing < age) {
+                    result.put(w.runId, age);
+                }
+            }
+        }
+        return result;
+    }
+
+    public int getStaleHours() {
+        return STALE_HOURS;
+    }
+
+    @Override
+    public boolean isActivated() {
+        return getStaleCount() > 0;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Builds waiting for input";
+    }
+
+    /**
+     * Picks up builds that were still waiting for input when Jenkins was shut down.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void loadWaits() {
+        PendingInputMonitor monitor = get();
+        for (FlowExecution e : FlowExecutionList.get()) {
+            try {
+                Queue.Executable exec = e.getOwner().getExecutable();
+                if (exec instanceof Run) {
+                    PendingInputAction a = ((Run<?,?>) exec).getAction(PendingInputAction.class);
+                    if (a != null) {
+                        for (Wait w : a.getWaits()) {
+                            monitor.waits.put(w.key, w);
+                        }
+                    }
+                }
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "Could not load " + e.getOwner(), x);
+            }
+        }
+    }
+
+    /**
+     * Forgets a build's waits as soon as it finishes, however it finished - e.g., one that was hard-killed, so the
+     * "input" action never got to call {@link #finished(String)}.
+     */
+    @Extension
+    public static class Pruner extends RunListener<Run<?,?>> {
+        @Override
+        public void onCompleted(Run<?,?> run, @Nonnull TaskListener listener) {
+            String runId = run.getExternalizableId();
+            for (Iterator<Wait> it = get().waits.values().iterator(); it.hasNext(); ) {
+                if (runId.equals(it.next().runId)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * A single build waiting for input.
+     */
+    public static final class Wait {
+        private final String key;
+        private final String runId;
+        private final String message;
+        private final long since;
+
+        Wait(String key, @CheckForNull String runId, String message, long since) {
+            this.key = key;
+            this.runId = runId;
+            this.message = message;
+            this.since = since;
+        }
+
+        @CheckForNull
+        public String getRunId() {
+            return runId;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public long getSince() {
+            return since;
+        }
+    }
+
+    /**
+     * Records the input waits in progress on a build.
+     */
+    public static class PendingInputAction extends InvisibleAction {
+        private final List<Wait> waits = new ArrayList<Wait>();
+
+        synchronized void add(Wait w) {
+            waits.add(w);
+        }
+
+        synchronized boolean remove(String key) {
+            for (int i = 0; i < waits.size(); i++) {
+                if (waits.get(i).key.equals(key)) {
+                    waits.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public synchronized List<Wait> getWaits() {
+            return Collections.unmodifiableList(new ArrayList<Wait>(waits));
+        }
+    }
+}
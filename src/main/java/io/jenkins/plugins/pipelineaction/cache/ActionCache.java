@@ -0,0 +1,290 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.cache;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Job;
+import hudson.remoting.VirtualChannel;
+import io.jenkins.plugins.pipelineaction.PipelineAction;
+import io.jenkins.plugins.pipelineaction.RunPipelineAction;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.model.Jenkins;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.types.FileSet;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
+
+import javax.annotation.CheckForNull;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The on-controller store for cached {@link io.jenkins.plugins.pipelineaction.PipelineAction} results. Each entry is
+ * a gzipped tarball of the action's declared outputs, stored under {@code $JENKINS_HOME/pipeline-action-cache} and
+ * named by a key hashed from the action's name, generation and script, its arguments and output patterns, the job (or
+ * shared namespace) it was run in and the contents of its declared input files.
+ *
+ * Entries are restored into workspaces, so by default a job only sees its own. Shared namespaces have to be allowed by
+ * an administrator with {@link #SHARED_NAMESPACES}, and even then are only shared by jobs in the same folder.
+ */
+public final class ActionCache {
+    private static final Logger LOGGER = Logger.getLogger(ActionCache.class.getName());
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Maximum number of entries kept in the store. Least recently used entries are removed first.
+     */
+    public static /* non-final for script console */ int MAX_ENTRIES =
+            Integer.getInteger(ActionCache.class.getName() + ".maxEntries", 500);
+
+    /**
+     * Comma-separated namespaces that "cache: [shared: ...]" may use. Any other is refused, and the action is cached
+     * for its job only - otherwise any job could plant files for another job to restore.
+     */
+    public static /* non-final for script console */ String SHARED_NAMESPACES =
+            System.getProperty(ActionCache.class.getName() + ".sharedNamespaces", "");
+
+    private ActionCache() {
+    }
+
+    /**
+     * @param job The job the action runs in.
+     * @return The namespace of the job's own entries.
+     */
+    public static String jobNamespace(Job<?,?> job) {
+        return "job:" + job.getFullName();
+    }
+
+    /**
+     * Resolves a shared namespace requested by a job.
+     *
+     * @param job The job the action runs in.
+     * @param shared The requested namespace.
+     * @return The namespace, scoped to the job's folder, or null if it isn't in {@link #SHARED_NAMESPACES}.
+     */
+    @CheckForNull
+    public static String sharedNamespace(Job<?,?> job, String shared) {
+        for (String allowed : SHARED_NAMESPACES.split(",")) {
+            if (!allowed.trim().isEmpty() && allowed.trim().equals(shared)) {
+                return "shared:" + job.getParent().getFullName() + ":" + shared;
+            }
+        }
+        return null;
+    }
+
+    public static File getStoreDir() {
+        return new File(Jenkins.getInstance().getRootDir(), "pipeline-action-cache");
+    }
+
+    static File getEntry(String key) {
+        return new File(getStoreDir(), key + ".tgz");
+    }
+
+    /**
+     * Computes a stable digest of an action's arguments, independent of map ordering. Arguments handled by
+     * "runPipelineAction" itself, such as "cache" or "policy", are left out, since they don't change what the action
+     * does.
+     *
+     * @param name The action name.
+     * @param args The arguments passed to "runPipelineAction".
+     * @return A hex-encoded SHA-256 digest.
+     */
+    @Whitelisted
+    public static String digestArgs(String name, @CheckForNull Map<?,?> args) {
+        MessageDigest md = sha256();
+        md.update(name.getBytes(UTF8));
+        md.update((byte) 0);
+        md.update(canonicalize(actionArgs(args)).getBytes(UTF8));
+        return Util.toHexString(md.digest());
+    }
+
+    /**
+     * Computes the digest a cached invocation is stored under - its arguments as in {@link #digestArgs(String, Map)},
+     * plus the action's generation and script, so that changing the action invalidates its entries, its output
+     * patterns, so that changing them doesn't restore a stale set of files, and the namespace the entry is visible in.
+     *
+     * @param action The action being invoked.
+     * @param namespace The namespace - see {@link #jobNamespace(Job)} and {@link #sharedNamespace(Job, String)}.
+     * @param outputs The output patterns.
+     * @param args The arguments passed to "runPipelineAction".
+     * @return A hex-encoded SHA-256 digest.
+     * @throws Exception if the action's script can't be loaded.
+     */
+    @Whitelisted
+    public static String digestInvocation(PipelineAction action, String namespace, @CheckForNull String outputs,
+                                          @CheckForNull Map<?,?> args) throws Exception {
+        MessageDigest md = sha256();
+        md.update(namespace.getBytes(UTF8));
+        md.update((byte) 0);
+        md.update(Util.fixNull(outputs).getBytes(UTF8));
+        md.update((byte) 0);
+        md.update(Long.toString(action.getGeneration()).getBytes(UTF8));
+        md.update((byte) 0);
+        md.update(Util.getDigestOf(action.getScriptSource().getScriptText()).getBytes(UTF8));
+        md.update((byte) 0);
+        md.update(digestArgs(action.getName(), args).getBytes(UTF8));
+        return Util.toHexString(md.digest());
+    }
+
+    private static Map<String,Object> actionArgs(@CheckForNull Map<?,?> args) {
+        Map<String,Object> result = new TreeMap<String,Object>();
+        if (args != null) {
+            for (Map.Entry<?,?> e : args.entrySet()) {
+                String key = String.valueOf(e.getKey());
+                if (!RunPipelineAction.DISPATCHER_ARGS.contains(key)) {
+                    result.put(key, e.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String canonicalize(@CheckForNull Object o) {
+        if (o instanceof Map) {
+            Map<String,String> sorted = new TreeMap<String,String>();
+            for (Map.Entry<?,?> e : ((Map<?,?>) o).entrySet()) {
+                sorted.put(String.valueOf(e.getKey()), canonicalize(e.getValue()));
+            }
+            return sorted.toString();
+        } else if (o instanceof Collection) {
+            List<String> items = new ArrayList<String>();
+            for (Object item : (Collection<?>) o) {
+                items.add(canonicalize(item));
+            }
+            return items.toString();
+        } else {
+            return String.valueOf(o);
+        }
+    }
+
+    /**
+     * Computes the cache key for an action invocation.
+     *
+     * @param workspace The workspace the action runs in. Only needed if there are inputs.
+     * @param argsDigest The digest from {@link #digestInvocation(PipelineAction, String, Map)}.
+     * @param inputs Comma-separated Ant-style patterns for the action's input files, relative to the workspace.
+     * @return A hex-encoded SHA-256 key.
+     * @throws IOException if the input files can't be read.
+     * @throws InterruptedException if interrupted while talking to the agent.
+     */
+    static String computeKey(@CheckForNull FilePath workspace, String argsDigest, @CheckForNull String inputs)
+            throws IOException, InterruptedException {
+        MessageDigest md = sha256();
+        md.update(argsDigest.getBytes(UTF8));
+        if (Util.fixEmpty(inputs) != null) {
+            if (workspace == null) {
+                throw new AbortException("Cache inputs '" + inputs + "' can only be hashed inside a node block");
+            }
+            md.update((byte) 0);
+            md.update(workspace.act(new InputDigest(inputs)).getBytes(UTF8));
+        }
+        return Util.toHexString(md.digest());
+    }
+
+    /**
+     * Removes the least recently used entries if the store has grown past {@link #MAX_ENTRIES}.
+     */
+    static void prune() {
+        File[] entries = getStoreDir().listFiles();
+        if (entries == null || entries.length <= MAX_ENTRIES) {
+            return;
+        }
+
+        Arrays.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (int i = 0; i < entries.length - MAX_ENTRIES; i++) {
+            if (!entries[i].delete()) {
+                LOGGER.log(Level.WARNING, "Could not delete cache entry {0}", entries[i]);
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hashes the relative paths and contents of all files matching the input patterns, on the agent.
+     */
+    private static final class InputDigest extends MasterToSlaveFileCallable<String> {
+        private final String includes;
+
+        InputDigest(String includes) {
+            this.includes = includes;
+        }
+
+        @Override
+        public String invoke(File dir, VirtualChannel channel) throws IOException, InterruptedException {
+            FileSet fs = Util.createFileSet(dir, includes);
+            DirectoryScanner ds = fs.getDirectoryScanner();
+            String[] files = ds.getIncludedFiles();
+            Arrays.sort(files);
+
+            MessageDigest md = sha256();
+            byte[] buf = new byte[8192];
+            for (String f : files) {
+                md.update(f.replace('\\', '/').getBytes(UTF8));
+                md.update((byte) 0);
+                InputStream in = new FileInputStream(new File(dir, f));
+                try {
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        md.update(buf, 0, n);
+                    }
+                } finally {
+                    in.close();
+                }
+                md.update((byte) 0);
+            }
+            return Util.toHexString(md.digest());
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.cache;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records cache hits and misses for cacheable {@link io.jenkins.plugins.pipelineaction.PipelineAction}s in a build.
+ */
+public class ActionCacheAction extends InvisibleAction {
+    private final Map<String,Integer> hits = new HashMap<String,Integer>();
+    private final Map<String,Integer> misses = new HashMap<String,Integer>();
+
+    public synchronized int getHits(String action) {
+        Integer n = hits.get(action);
+        return n != null ? n : 0;
+    }
+
+    public synchronized int getMisses(String action) {
+        Integer n = misses.get(action);
+        return n != null ? n : 0;
+    }
+
+    private synchronized void add(String action, boolean hit) {
+        Map<String,Integer> m = hit ? hits : misses;
+        Integer n = m.get(action);
+        m.put(action, n != null ? n + 1 : 1);
+    }
+
+    /**
+     * Records a hit or miss for the given action on the build, creating the action if needed, and saves the build.
+     */
+    static void record(Run<?,?> run, String action, boolean hit) throws IOException {
+        ActionCacheAction a;
+        synchronized (run) {
+            a = run.getAction(ActionCacheAction.class);
+            if (a == null) {
+                a = new ActionCacheAction();
+                run.addAction(a);
+            }
+        }
+        a.add(action, hit);
+        run.save();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.cache;
+
+import com.google.inject.Inject;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Looks up a cacheable action invocation in the {@link ActionCache}, restoring its outputs into the workspace on a
+ * hit. Used internally by "runPipelineAction" - returns a map with "hit" and the computed "key", to be passed on to
+ * {@link ActionCacheSaveStep} on a miss. Can be run outside of a node if the action has no inputs.
+ */
+public class ActionCacheLookupStep extends AbstractStepImpl {
+    private final String action;
+    private String argsDigest = "";
+    private String inputs;
+
+    @DataBoundConstructor
+    public ActionCacheLookupStep(String action) {
+        this.action = action;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getArgsDigest() {
+        return argsDigest;
+    }
+
+    @DataBoundSetter
+    public void setArgsDigest(String argsDigest) {
+        this.argsDigest = argsDigest;
+    }
+
+    public String getInputs() {
+        return inputs;
+    }
+
+    @DataBoundSetter
+    public void setInputs(String inputs) {
+        this.inputs = inputs;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "pipelineActionCacheLookup";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Look up a cached pipeline action result";
+        }
+    }
+
+    public static class Execution extends AbstractSynchronousNonBlockingStepExecution<Map<String,Object>> {
+        @Inject(optional = true)
+        private transient ActionCacheLookupStep step;
+        @StepContextParameter
+        private transient Run<?,?> run;
+        @StepContextParameter
+        private transient TaskListener listener;
+
+        @Override
+        protected Map<String,Object> run() throws Exception {
+            // Outside of a node, there's no workspace - which is fine as long as there are no inputs or outputs.
+            FilePath workspace = getContext().get(FilePath.class);
+            String key = ActionCache.computeKey(workspace, step.getAction() + ':' + step.getArgsDigest(),
+                    step.getInputs());
+            File entry = ActionCache.getEntry(key);
+
+            boolean hit = entry.isFile();
+            if (hit) {
+                if (workspace != null) {
+                    InputStream in = new FileInputStream(entry);
+                    try {
+                        workspace.untarFrom(in, FilePath.TarCompression.GZIP);
+                    } finally {
+                        in.close();
+                    }
+                }
+                // Touch the entry so it's pruned last.
+                entry.setLastModified(System.currentTimeMillis());
+                listener.getLogger().println("Restored cached result of action '" + step.getAction() + "'");
+            }
+            ActionCacheAction.record(run, step.getAction(), hit);
+
+            Map<String,Object> result = new HashMap<String,Object>();
+            result.put("hit", hit);
+            result.put("key", key);
+            return result;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.cache;
+
+import com.google.inject.Inject;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores the declared outputs of a cacheable action invocation in the {@link ActionCache} under the key returned by
+ * {@link ActionCacheLookupStep}. Used internally by "runPipelineAction". Can be run outside of a node if the action
+ * has no outputs, in which case the entry just records that the invocation succeeded.
+ */
+public class ActionCacheSaveStep extends AbstractStepImpl {
+    private final String key;
+    private String outputs;
+
+    @DataBoundConstructor
+    public ActionCacheSaveStep(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getOutputs() {
+        return outputs;
+    }
+
+    @DataBoundSetter
+    public void setOutputs(String outputs) {
+        this.outputs = outputs;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "pipelineActionCacheSave";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Save a pipeline action result to the cache";
+        }
+    }
+
+    public static class Execution extends AbstractSynchronousNonBlockingStepExecution<Void> {
+        @Inject(optional = true)
+        private transient ActionCacheSaveStep step;
+
+        @Override
+        protected Void run() throws Exception {
+            String outputs = Util.fixEmpty(step.getOutputs());
+            FilePath workspace = getContext().get(FilePath.class);
+            if (outputs != null && workspace == null) {
+                throw new AbortException("Cache outputs '" + outputs + "' can only be saved inside a node block");
+            }
+
+            File dir = ActionCache.getStoreDir();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create " + dir);
+            }
+
+            // Write to a temporary file first so that concurrent lookups never see a partial entry.
+            File tmp = File.createTempFile(step.getKey(), ".tmp", dir);
+            try {
+                OutputStream out = new GZIPOutputStream(new FileOutputStream(tmp));
+                try {
+                    if (outputs != null) {
+                        workspace.tar(out, outputs);
+                    }
+                } finally {
+                    out.close();
+                }
+
+                File entry = ActionCache.getEntry(step.getKey());
+                if (!tmp.renameTo(entry)) {
+                    // Another build may have stored the same entry first - that's fine.
+                    if (!entry.isFile()) {
+                        throw new IOException("Could not store cache entry " + entry);
+                    }
+                }
+            } finally {
+                if (tmp.exists() && !tmp.delete()) {
+                    tmp.deleteOnExit();
+                }
+            }
+
+            ActionCache.prune();
+            return null;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+}
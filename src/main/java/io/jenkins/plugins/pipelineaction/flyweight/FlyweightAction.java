@@ -0,0 +1,54 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.flyweight;
+
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import javax.annotation.CheckForNull;
+import java.util.Map;
+
+/**
+ * Controller-side implementation of a {@link io.jenkins.plugins.pipelineaction.PipelineAction} that doesn't use a
+ * node. An action returning one of these from
+ * {@link io.jenkins.plugins.pipelineaction.PipelineAction#getFlyweight()} is run directly on the
+ * {@link FlyweightExecutor} pool, as a single step, rather than through its script.
+ *
+ * Flyweights should be quick, must not block on agents or user input, and may be run again if the build resumes
+ * after a restart before they've finished.
+ */
+public abstract class FlyweightAction {
+
+    /**
+     * Runs the action.
+     *
+     * @param args The "runPipelineAction" arguments, already checked for the action's required fields.
+     * @param run The build the action was invoked from, if known.
+     * @param listener The build's listener.
+     * @return The value to return from "runPipelineAction". Must be serializable.
+     * @throws Exception if the action fails, failing the step.
+     */
+    public abstract Object run(Map<String,Object> args, @CheckForNull Run<?,?> run, TaskListener listener)
+            throws Exception;
+}
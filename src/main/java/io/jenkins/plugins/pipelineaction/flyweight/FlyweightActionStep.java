@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.flyweight;
+
+import com.google.inject.Inject;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import io.jenkins.plugins.pipelineaction.PipelineAction;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs a {@link FlyweightAction} on the {@link FlyweightExecutor}. Used internally by "runPipelineAction" for actions
+ * that don't use a node and provide a flyweight - the whole action is recorded as this one step.
+ */
+public class FlyweightActionStep extends AbstractStepImpl {
+    private final String action;
+    private final Map<String,Object> args;
+
+    @DataBoundConstructor
+    public FlyweightActionStep(String action, Map<String,Object> args) {
+        this.action = action;
+        this.args = args != null ? new HashMap<String,Object>(args) : new HashMap<String,Object>();
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public Map<String,Object> getArgs() {
+        return args;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "pipelineActionFlyweight";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Run a pipeline action on the controller";
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Step newInstance(Map<String,Object> arguments) throws Exception {
+            // The arguments map is passed through as-is, rather than bound as a nested describable.
+            return new FlyweightActionStep((String) arguments.get("action"), (Map<String,Object>) arguments.get("args"));
+        }
+    }
+
+    public static class Execution extends AbstractStepExecutionImpl {
+        @Inject(optional = true)
+        private transient FlyweightActionStep step;
+        @StepContextParameter
+        private transient Run<?,?> run;
+        @StepContextParameter
+        private transient TaskListener listener;
+
+        private String action;
+        private HashMap<String,Object> args;
+
+        private transient volatile Future<?> task;
+
+        @Override
+        public boolean start() throws Exception {
+            action = step.getAction();
+            args = new HashMap<String,Object>(step.getArgs());
+            submit();
+            return false;
+        }
+
+        private void submit() {
+            PipelineAction p = PipelineAction.pipelineActionMap(run).get(action);
+            final FlyweightAction flyweight = p != null ? p.getFlyweight() : null;
+            if (flyweight == null) {
+                getContext().onFailure(new IllegalStateException("No flyweight for action '" + action + "'"));
+                return;
+            }
+
+            try {
+                task = FlyweightExecutor.get().submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            getContext().onSuccess(flyweight.run(args, run, listener));
+                        } catch (Throwable t) {
+                            getContext().onFailure(t);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                getContext().onFailure(new AbortException("Could not run '" + action + "' action: "
+                        + (e.getMessage() != null ? e.getMessage() : "too many flyweight actions queued")));
+            }
+        }
+
+        @Override
+        public void stop(Throwable cause) throws Exception {
+            Future<?> t = task;
+            if (t != null) {
+                t.cancel(true);
+            }
+            getContext().onFailure(cause);
+        }
+
+        @Override
+        public void onResume() {
+            super.onResume();
+            // Flyweights aren't durable - just run it again.
+            submit();
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+}
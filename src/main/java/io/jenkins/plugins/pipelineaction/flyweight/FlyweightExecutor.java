@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.flyweight;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded controller-side pool that {@link FlyweightAction}s run on.
+ */
+@Extension
+public class FlyweightExecutor {
+
+    /**
+     * Number of threads running flyweight actions.
+     */
+    public static /* non-final for script console */ int POOL_SIZE =
+            Integer.getInteger(FlyweightExecutor.class.getName() + ".poolSize", 4);
+
+    /**
+     * Maximum number of flyweight actions waiting for a thread. Once full, further actions are rejected and their
+     * steps fail, rather than being run on the Pipeline thread.
+     */
+    public static /* non-final for script console */ int QUEUE_CAPACITY =
+            Integer.getInteger(FlyweightExecutor.class.getName() + ".queueCapacity", 100);
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Set once Jenkins starts shutting down, after which nothing more is run. Guarded by this.
+     */
+    private boolean shutDown;
+
+    public static FlyweightExecutor get() {
+        return ExtensionList.lookup(FlyweightExecutor.class).get(FlyweightExecutor.class);
+    }
+
+    /**
+     * Runs a task on the pool.
+     *
+     * @param task The task.
+     * @return The task's future, for cancellation.
+     * @throws RejectedExecutionException If the pool's queue is full, or Jenkins is shutting down.
+     */
+    public Future<?> submit(Runnable task) throws RejectedExecutionException {
+        return getExecutor().submit(task);
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (shutDown) {
+            throw new RejectedExecutionException("Jenkins is shutting down");
+        }
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "PipelineActionFlyweightExecutor"));
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    @Terminator
+    public static void shutdown() {
+        FlyweightExecutor flyweights = get();
+        synchronized (flyweights) {
+            flyweights.shutDown = true;
+            if (flyweights.executor != null) {
+                flyweights.executor.shutdown();
+                flyweights.executor = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.notifications;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.tasks.Mailer;
+import jenkins.model.JenkinsLocationConfiguration;
+
+import javax.annotation.Nonnull;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@link NotificationSender} for the "email" action, sending mail directly through the {@link Mailer} configuration
+ * rather than via the "mail" step. Notifications are grouped by their to/cc/bcc addresses, and by their from, replyTo
+ * and charset headers. Only registered if the Mailer plugin is installed.
+ */
+@Extension(optional = true)
+public class MailNotificationSender extends NotificationSender {
+
+    @Override
+    public String getActionName() {
+        return "email";
+    }
+
+    @Nonnull
+    @Override
+    public String getRecipient(Map<String,String> fields) {
+        StringBuilder recipient = new StringBuilder(normalize(fields.get("to")));
+        String cc = normalize(fields.get("cc"));
+        if (!cc.isEmpty()) {
+            recipient.append("|cc:").append(cc);
+        }
+        String bcc = normalize(fields.get("bcc"));
+        if (!bcc.isEmpty()) {
+            recipient.append("|bcc:").append(bcc);
+        }
+        // Digests are sent with the first notification's headers, so only coalesce notifications that share them.
+        for (String header : new String[] {"from", "replyTo", "charset"}) {
+            String value = Util.fixEmpty(fields.get(header));
+            if (value != null) {
+                recipient.append('|').append(header).append(':').append(value.trim());
+            }
+        }
+        return recipient.toString();
+    }
+
+    @Override
+    public void send(String recipient, List<Notification> notifications) throws Exception {
+        Notification first = notifications.get(0);
+
+        String charset = Util.fixEmpty(first.getField("charset"));
+        if (charset == null) {
+            charset = "UTF-8";
+        }
+        String from = Util.fixEmpty(first.getField("from"));
+        if (from == null) {
+            from = JenkinsLocationConfiguration.get().getAdminAddress();
+        }
+
+        MimeMessage msg = new MimeMessage(Mailer.descriptor().createSession());
+        msg.setFrom(new InternetAddress(from));
+        msg.setSentDate(new Date());
+        addRecipients(msg, Message.RecipientType.TO, first.getField("to"));
+        addRecipients(msg, Message.RecipientType.CC, first.getField("cc"));
+        addRecipients(msg, Message.RecipientType.BCC, first.getField("bcc"));
+        String replyTo = Util.fixEmpty(first.getField("replyTo"));
+        if (replyTo != null) {
+            msg.setReplyTo(InternetAddress.parse(replyTo));
+        }
+
+        String mimeType = null;
+        if (notifications.size() == 1) {
+            msg.setSubject(first.getField("subject"), charset);
+            mimeType = Util.fixEmpty(first.getField("mimeType"));
+            if (mimeType != null) {
+                msg.setContent(first.getField("body"), mimeType + "; charset=" + charset);
+            } else {
+                msg.setText(first.getField("body"), charset);
+            }
+        } else {
+            msg.setSubject(notifications.size() + " notifications: " + first.getField("subject")
+                    + " (and " + (notifications.size() - 1) + " more)", charset);
+            msg.setText(digestBody(notifications), charset);
+        }
+
+        Transport.send(msg);
+    }
+
+    private static String digestBody(List<Notification> notifications) {
+        StringBuilder body = new StringBuilder();
+        for (Notification n : notifications) {
+            body.append("=== ").append(n.getField("subject")).append(" ===\n");
+            if (n.getRunDisplayName() != null) {
+                body.append("From: ").append(n.getRunDisplayName()).append('\n');
+            }
+            body.append('\n').append(n.getField("body")).append("\n\n");
+        }
+        return body.toString();
+    }
+
+    private static void addRecipients(MimeMessage msg, Message.RecipientType type, String addresses)
+            throws MessagingException {
+        if (Util.fixEmpty(addresses) != null) {
+            msg.addRecipients(type, InternetAddress.parse(addresses));
+        }
+    }
+
+    private static String normalize(String addresses) {
+        if (Util.fixEmpty(addresses) == null) {
+            return "";
+        }
+        List<String> parts = new ArrayList<String>();
+        for (String a : addresses.split("[,\\s]+")) {
+            if (!a.isEmpty()) {
+                parts.add(a.toLowerCase(Locale.ENGLISH));
+            }
+        }
+        Collections.sort(parts);
+        return Util.join(parts, ",");
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.notifications;
+
+import hudson.Util;
+import hudson.model.Run;
+import io.jenkins.plugins.pipelineaction.PipelineAction;
+
+import javax.annotation.CheckForNull;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single notification handed off from a {@link io.jenkins.plugins.pipelineaction.PipelineActionType#NOTIFIER}
+ * action to be delivered on the controller rather than in the Pipeline itself.
+ *
+ * Field values are stored as strings, so that the notification can be written to disk and read back after a restart.
+ */
+public class Notification implements Serializable {
+    private final String actionName;
+    private final String recipient;
+    private final String runId;
+    private final String runDisplayName;
+    private final Map<String,String> fields;
+    private final long timestamp;
+
+    /**
+     * @param actionName The name of the notifier action this notification is for.
+     * @param recipient The recipient or channel key, as returned by {@link NotificationSender#getRecipient(Map)}.
+     * @param run The build that sent the notification, if any.
+     * @param fields The notification fields, already filtered down to the action's known fields.
+     */
+    public Notification(String actionName, String recipient, @CheckForNull Run<?,?> run, Map<String,String> fields) {
+        this.actionName = actionName;
+        this.recipient = recipient;
+        this.runId = run != null ? run.getExternalizableId() : null;
+        this.runDisplayName = run != null ? run.getFullDisplayName() : null;
+        this.fields = new LinkedHashMap<String,String>(fields);
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Creates a notification from the arguments passed to "runPipelineAction", keeping only the action's known fields.
+     *
+     * @param action The notifier action.
+     * @param sender The action's {@link NotificationSender}, used to determine the recipient.
+     * @param args The arguments passed to "runPipelineAction".
+     * @param run The build sending the notification, if any.
+     * @return A new notification.
+     * @throws IllegalArgumentException if any of the action's required fields are missing.
+     */
+    public static Notification create(PipelineAction action, NotificationSender sender, Map<String,Object> args,
+                                      @CheckForNull Run<?,?> run) throws IllegalArgumentException {
+        Map<String,String> fields = new LinkedHashMap<String,String>();
+        List<String> missing = new ArrayList<String>();
+
+        for (Map.Entry<String,Boolean> f : action.getFields().entrySet()) {
+            Object value = args.get(f.getKey());
+            if (value != null) {
+                fields.put(f.getKey(), value.toString());
+            } else if (f.getValue()) {
+                missing.add(f.getKey());
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("Missing required field(s) for '" + action.getName() + "' action: "
+                    + Util.join(missing, ", "));
+        }
+
+        return new Notification(action.getName(), sender.getRecipient(fields), run, fields);
+    }
+
+    public String getActionName() {
+        return actionName;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    /**
+     * @return The {@link Run#getExternalizableId()} of the build that sent this notification, or null.
+     */
+    @CheckForNull
+    public String getRunId() {
+        return runId;
+    }
+
+    @CheckForNull
+    public String getRunDisplayName() {
+        return runDisplayName;
+    }
+
+    public Map<String,String> getFields() {
+        return Collections.unmodifiableMap(fields);
+    }
+
+    @CheckForNull
+    public String getField(String name) {
+        return fields.get(name);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Key used to group notifications together - same action, same recipient.
+     */
+    String getKey() {
+        return actionName + '\u0000' + recipient;
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,436 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.notifications;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.init.Terminator;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import io.jenkins.plugins.pipelineaction.PipelineAction;
+import io.jenkins.plugins.pipelineaction.PipelineActionContext;
+import io.jenkins.plugins.pipelineaction.PipelineActionType;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects notifications from {@link PipelineActionType#NOTIFIER} actions for the same recipient over a time window
+ * and sends them as a single digest, using the action's {@link NotificationSender} via the
+ * {@link NotificationDispatcher}.
+ *
+ * Each action/recipient pair gets a token bucket, so that a burst of failures can't flood the recipient. Digests that
+ * exceed the rate limit are written to disk under {@code $JENKINS_HOME/pipeline-action-notifications/overflow}, in a
+ * directory per action/recipient pair, and drained as the bucket refills.
+ */
+@Extension
+public class NotificationCoalescer {
+    private static final Logger LOGGER = Logger.getLogger(NotificationCoalescer.class.getName());
+
+    /**
+     * How long to collect notifications for the same recipient before sending a digest, in seconds.
+     */
+    public static /* non-final for script console */ int WINDOW_SECONDS =
+            Integer.getInteger(NotificationCoalescer.class.getName() + ".windowSeconds", 60);
+
+    /**
+     * How many digests can be sent to the same recipient in a burst.
+     */
+    public static /* non-final for script console */ int BUCKET_CAPACITY =
+            Integer.getInteger(NotificationCoalescer.class.getName() + ".bucketCapacity", 5);
+
+    /**
+     * How long it takes for a recipient's bucket to regain one digest, in seconds.
+     */
+    public static /* non-final for script console */ int REFILL_SECONDS =
+            Integer.getInteger(NotificationCoalescer.class.getName() + ".refillSeconds", 300);
+
+    /**
+     * Maximum number of recipients whose rate limits are tracked. Full buckets are dropped first, since a new bucket
+     * is full anyway - after that, the least recently used.
+     */
+    public static /* non-final for script console */ int MAX_BUCKETS =
+            Integer.getInteger(NotificationCoalescer.class.getName() + ".maxBuckets", 1000);
+
+    private final Map<String,List<Notification>> pending = new HashMap<String,List<Notification>>();
+
+    /**
+     * Token buckets by key, in access order. Guarded by itself.
+     */
+    private final LinkedHashMap<String,TokenBucket> buckets = new LinkedHashMap<String,TokenBucket>(16, 0.75f, true);
+
+    private final AtomicLong overflowCounter = new AtomicLong();
+
+    /**
+     * Held while sending from or adding to the overflow queue, so that a recipient's digests can't overtake each
+     * other.
+     */
+    private final Object overflowLock = new Object();
+
+    /**
+     * Names of the overflow directories with digests in them - one per action/recipient pair, named by the digest of
+     * its key. Loaded from disk on first use, so that flushing a recipient with nothing queued doesn't touch the disk.
+     * Guarded by {@link #overflowLock}.
+     */
+    private Set<String> overflowing;
+
+    public static NotificationCoalescer get() {
+        return ExtensionList.lookup(NotificationCoalescer.class).get(NotificationCoalescer.class);
+    }
+
+    /**
+     * Queues a notification from the current build for coalesced delivery. ONLY TO BE RUN FROM WITHIN A CPS THREAD.
+     *
+     * @param actionName The name of the notifier action.
+     * @param args The arguments passed to "runPipelineAction".
+     * @return True if the notification was queued, false if the action has no {@link NotificationSender} and must
+     * be run normally.
+     * @throws IOException if the current build can't be loaded.
+     * @throws IllegalArgumentException if there's no such notifier action or required fields are missing.
+     */
+    public boolean offer(String actionName, Map<String,Object> args) throws IOException {
+        PipelineAction action = PipelineAction.getPipelineAction(actionName, PipelineActionType.NOTIFIER);
+        if (action == null) {
+            throw new IllegalArgumentException("No notifier action with name " + actionName + " exists.");
+        }
+
+        NotificationSender sender = action.getNotificationSender();
+        if (sender == null) {
+            return false;
+        }
+
+        offer(Notification.create(action, sender, args, PipelineActionContext.currentRun()));
+        return true;
+    }
+
+    /**
+     * Queues a notification, scheduling a flush of its recipient's digest if one isn't already pending.
+     *
+     * @param notification The notification to queue.
+     */
+    public void offer(final Notification notification) {
+        final String key = notification.getKey();
+        boolean schedule = false;
+        synchronized (this) {
+            List<Notification> batch = pending.get(key);
+            if (batch == null) {
+                batch = new ArrayList<Notification>();
+                pending.put(key, batch);
+                schedule = true;
+            }
+            batch.add(notification);
+        }
+
+        if (schedule) {
+            Timer.get().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush(key);
+                }
+            }, WINDOW_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Immediately flushes every pending digest, subject to the rate limit.
+     */
+    public void flushAll() {
+        Set<String> keys;
+        synchronized (this) {
+            keys = new HashSet<String>(pending.keySet());
+        }
+        for (String key : keys) {
+            flush(key);
+        }
+    }
+
+    private void flush(String key) {
+        List<Notification> batch;
+        synchronized (this) {
+            batch = pending.remove(key);
+        }
+
+        if (batch != null && !batch.isEmpty()) {
+            synchronized (overflowLock) {
+                // Older digests for this recipient already on disk go first - if they can't all go, this one waits.
+                if (drainOverflow(key) && tryAcquire(key)) {
+                    deliver(batch);
+                } else {
+                    overflow(batch);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the digests on disk for one recipient, oldest first, for as long as it has capacity.
+     *
+     * @return True if there's nothing left on disk for the recipient.
+     */
+    private boolean drainOverflow(String key) {
+        assert Thread.holdsLock(overflowLock);
+        String id = Util.getDigestOf(key);
+        return !overflowing().contains(id) || drainOverflowDir(id);
+    }
+
+    /**
+     * Sends any digests written to disk whose recipients have regained capacity, oldest first.
+     */
+    public void drainOverflow() {
+        synchronized (overflowLock) {
+            for (String id : new ArrayList<String>(overflowing())) {
+                drainOverflowDir(id);
+            }
+        }
+    }
+
+    /**
+     * Sends the digests in one recipient's overflow directory, oldest first, until it runs out of capacity - the rest
+     * are left alone so they're still sent in order.
+     *
+     * @return True if the directory is now empty, and has been removed.
+     */
+    private boolean drainOverflowDir(String id) {
+        File dir = new File(getOverflowDir(), id);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File f : files) {
+                List<Notification> batch = readOverflow(f);
+                if (batch == null || batch.isEmpty()) {
+                    deleteOverflow(f);
+                    continue;
+                }
+                if (!tryAcquire(batch.get(0).getKey())) {
+                    return false;
+                }
+                deleteOverflow(f);
+                deliver(batch);
+            }
+        }
+
+        // Delivery may have put a digest straight back, if the dispatcher was full.
+        String[] left = dir.list();
+        if (left != null && left.length > 0) {
+            return false;
+        }
+        if (dir.exists() && !dir.delete()) {
+            LOGGER.log(Level.WARNING, "Could not delete {0}", dir);
+        }
+        overflowing().remove(id);
+        return true;
+    }
+
+    private Set<String> overflowing() {
+        assert Thread.holdsLock(overflowLock);
+        if (overflowing == null) {
+            overflowing = new HashSet<String>();
+            File[] dirs = getOverflowDir().listFiles();
+            if (dirs != null) {
+                for (File d : dirs) {
+                    if (d.isDirectory()) {
+                        overflowing.add(d.getName());
+                    }
+                }
+            }
+        }
+        return overflowing;
+    }
+
+    /**
+     * Hands a digest off to the {@link NotificationDispatcher}, falling back to the overflow queue if it's full.
+     */
+    private void deliver(List<Notification> batch) {
+        if (!NotificationDispatcher.get().dispatch(batch)) {
+            overflow(batch);
+        }
+    }
+
+    private boolean tryAcquire(String key) {
+        long refillMillis = TimeUnit.SECONDS.toMillis(REFILL_SECONDS);
+        TokenBucket bucket;
+        synchronized (buckets) {
+            bucket = buckets.get(key);
+            if (bucket == null) {
+                if (buckets.size() >= MAX_BUCKETS) {
+                    pruneBuckets(refillMillis);
+                }
+                bucket = new TokenBucket(BUCKET_CAPACITY);
+                buckets.put(key, bucket);
+            }
+        }
+        return bucket.tryAcquire(BUCKET_CAPACITY, refillMillis);
+    }
+
+    /**
+     * Makes room for a new bucket. Called with {@link #buckets} locked.
+     */
+    private void pruneBuckets(long refillMillis) {
+        for (Iterator<TokenBucket> it = buckets.values().iterator(); it.hasNext(); ) {
+            if (it.next().isFull(BUCKET_CAPACITY, refillMillis)) {
+                it.remove();
+            }
+        }
+        for (Iterator<TokenBucket> it = buckets.values().iterator(); it.hasNext() && buckets.size() >= MAX_BUCKETS; ) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Writes a digest to the overflow queue, to be sent once its recipient has capacity - after a restart, if need be.
+     *
+     * @param batch The notifications to queue. Never empty.
+     */
+    void queue(List<Notification> batch) {
+        synchronized (overflowLock) {
+            overflow(batch);
+        }
+    }
+
+    private void overflow(List<Notification> batch) {
+        assert Thread.holdsLock(overflowLock);
+        String id = Util.getDigestOf(batch.get(0).getKey());
+        File dir = new File(getOverflowDir(), id);
+        // Named so that they sort oldest first.
+        File f = new File(dir, String.format("%013d-%09d.xml", System.currentTimeMillis(),
+                overflowCounter.incrementAndGet()));
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create " + dir);
+            }
+            new XmlFile(f).write(new ArrayList<Notification>(batch));
+            overflowing().add(id);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not queue " + batch.size() + " notification(s) to " + f, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Notification> readOverflow(File f) {
+        try {
+            return (List<Notification>) new XmlFile(f).read();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read queued notifications from " + f, e);
+            return null;
+        }
+    }
+
+    private void deleteOverflow(File f) {
+        if (!f.delete()) {
+            LOGGER.log(Level.WARNING, "Could not delete {0}", f);
+        }
+    }
+
+    static File getOverflowDir() {
+        return new File(Jenkins.getInstance().getRootDir(), "pipeline-action-notifications/overflow");
+    }
+
+    /**
+     * Writes any digests still waiting for their window to close to disk, so they're sent after a restart.
+     */
+    @Terminator
+    public static void persistPending() {
+        NotificationCoalescer coalescer = get();
+        List<List<Notification>> batches;
+        synchronized (coalescer) {
+            batches = new ArrayList<List<Notification>>(coalescer.pending.values());
+            coalescer.pending.clear();
+        }
+        for (List<Notification> batch : batches) {
+            coalescer.queue(batch);
+        }
+    }
+
+    /**
+     * Periodically drains the on-disk overflow queue.
+     */
+    @Extension
+    public static class OverflowDrainer extends AsyncPeriodicWork {
+        public OverflowDrainer() {
+            super("Pipeline action notification overflow");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return MIN;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            get().drainOverflow();
+        }
+    }
+
+    /**
+     * A simple token bucket - refills one token every {@code refillMillis}, up to {@code capacity}.
+     */
+    static final class TokenBucket {
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(int capacity) {
+            this.tokens = capacity;
+            this.lastRefill = System.currentTimeMillis();
+        }
+
+        synchronized boolean isFull(int capacity, long refillMillis) {
+            return refillMillis <= 0
+                    || tokens + (double) (System.currentTimeMillis() - lastRefill) / refillMillis >= capacity;
+        }
+
+        synchronized boolean tryAcquire(int capacity, long refillMillis) {
+            long now = System.currentTimeMillis();
+            if (refillMillis <= 0) {
+                tokens = capacity;
+            } else {
+                tokens = Math.min(capacity, tokens + (double) (now - lastRefill) / refillMillis);
+            }
+            lastRefill = now;
+
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+    }
+}
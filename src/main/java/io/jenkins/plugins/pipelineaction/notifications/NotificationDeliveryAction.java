@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.notifications;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+import javax.annotation.CheckForNull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records the outcome of notifications sent asynchronously from a build by {@link NotificationDispatcher}.
+ */
+public class NotificationDeliveryAction extends InvisibleAction {
+
+    public enum State {
+        DELIVERED,
+        FAILED
+    }
+
+    private final List<Delivery> deliveries = new ArrayList<Delivery>();
+
+    public synchronized List<Delivery> getDeliveries() {
+        return Collections.unmodifiableList(new ArrayList<Delivery>(deliveries));
+    }
+
+    /**
+     * Adds a delivery outcome to the given build, creating the action if needed, and saves the build.
+     */
+    static void record(Run<?,?> run, String actionName, String recipient, State state, int attempts,
+                       @CheckForNull String message) throws IOException {
+        NotificationDeliveryAction a;
+        synchronized (run) {
+            a = run.getAction(NotificationDeliveryAction.class);
+            if (a == null) {
+                a = new NotificationDeliveryAction();
+                run.addAction(a);
+            }
+        }
+        synchronized (a) {
+            a.deliveries.add(new Delivery(actionName, recipient, state, attempts, message));
+        }
+        run.save();
+    }
+
+    /**
+     * The outcome of a single delivery.
+     */
+    public static class Delivery {
+        private final String actionName;
+        private final String recipient;
+        private final State state;
+        private final int attempts;
+        private final String message;
+        private final long timestamp;
+
+        Delivery(String actionName, String recipient, State state, int attempts, @CheckForNull String message) {
+            this.actionName = actionName;
+            this.recipient = recipient;
+            this.state = state;
+            this.attempts = attempts;
+            this.message = message;
+            this.timestamp = System.currentTimeMillis();
+        }
+
+        public String getActionName() {
+            return actionName;
+        }
+
+        public String getRecipient() {
+            return recipient;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        @CheckForNull
+        public String getMessage() {
+            return message;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+}
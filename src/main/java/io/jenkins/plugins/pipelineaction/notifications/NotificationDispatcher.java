@@ -0,0 +1,289 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.notifications;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.Terminator;
+import hudson.model.Run;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import io.jenkins.plugins.pipelineaction.PipelineAction;
+import io.jenkins.plugins.pipelineaction.PipelineActionContext;
+import io.jenkins.plugins.pipelineaction.PipelineActionType;
+import jenkins.util.Timer;
+
+import javax.annotation.CheckForNull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers notifications from {@link PipelineActionType#NOTIFIER} actions off the Pipeline thread, using a bounded
+ * queue and a small worker pool. Failed deliveries are retried with exponential backoff, and the final outcome is
+ * recorded on each build that sent one of the notifications via {@link NotificationDeliveryAction}.
+ *
+ * Deliveries that are still queued or waiting to be retried when Jenkins shuts down are written to the
+ * {@link NotificationCoalescer}'s overflow queue and sent after the restart. A send that's in progress when Jenkins
+ * is killed outright is lost, so delivery is at most once, not guaranteed.
+ */
+@Extension
+public class NotificationDispatcher {
+    private static final Logger LOGGER = Logger.getLogger(NotificationDispatcher.class.getName());
+
+    /**
+     * Number of worker threads sending notifications.
+     */
+    public static /* non-final for script console */ int POOL_SIZE =
+            Integer.getInteger(NotificationDispatcher.class.getName() + ".poolSize", 4);
+
+    /**
+     * Number of deliveries that can be waiting for a worker before new ones are rejected.
+     */
+    public static /* non-final for script console */ int QUEUE_CAPACITY =
+            Integer.getInteger(NotificationDispatcher.class.getName() + ".queueCapacity", 1000);
+
+    /**
+     * Maximum number of attempts for a single delivery.
+     */
+    public static /* non-final for script console */ int MAX_ATTEMPTS =
+            Integer.getInteger(NotificationDispatcher.class.getName() + ".maxAttempts", 5);
+
+    /**
+     * Delay before the first retry, in seconds. Doubled on each further attempt.
+     */
+    public static /* non-final for script console */ int INITIAL_BACKOFF_SECONDS =
+            Integer.getInteger(NotificationDispatcher.class.getName() + ".initialBackoffSeconds", 5);
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Set once Jenkins starts shutting down, after which nothing more is sent. Guarded by this.
+     */
+    private boolean shutDown;
+
+    /**
+     * Deliveries waiting on {@link Timer} to be retried. Guarded by this.
+     */
+    private final Set<Delivery> retrying = new HashSet<Delivery>();
+
+    public static NotificationDispatcher get() {
+        return ExtensionList.lookup(NotificationDispatcher.class).get(NotificationDispatcher.class);
+    }
+
+    /**
+     * Hands a notification from the current build off for asynchronous delivery. ONLY TO BE RUN FROM WITHIN A CPS
+     * THREAD.
+     *
+     * @param actionName The name of the notifier action.
+     * @param args The arguments passed to "runPipelineAction".
+     * @return True if the notification was queued, false if the action has no {@link NotificationSender} or the
+     * queue is full, in which case the action should be run normally.
+     * @throws IOException if the current build can't be loaded.
+     * @throws IllegalArgumentException if there's no such notifier action or required fields are missing.
+     */
+    public boolean dispatch(String actionName, Map<String,Object> args) throws IOException {
+        PipelineAction action = PipelineAction.getPipelineAction(actionName, PipelineActionType.NOTIFIER);
+        if (action == null) {
+            throw new IllegalArgumentException("No notifier action with name " + actionName + " exists.");
+        }
+
+        NotificationSender sender = action.getNotificationSender();
+        if (sender == null) {
+            return false;
+        }
+
+        List<Notification> batch = new ArrayList<Notification>();
+        batch.add(Notification.create(action, sender, args, PipelineActionContext.currentRun()));
+        return dispatch(batch);
+    }
+
+    /**
+     * Queues a batch of notifications for the same action and recipient for delivery as one message.
+     *
+     * @param batch The notifications to deliver. Never empty.
+     * @return True if the batch was queued, false if the queue is full.
+     */
+    public boolean dispatch(List<Notification> batch) {
+        try {
+            getExecutor().execute(new Delivery(batch, 1));
+            return true;
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.FINE, "Notification queue full", e);
+            return false;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (shutDown) {
+            throw new RejectedExecutionException("Jenkins is shutting down");
+        }
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "PipelineActionNotificationDispatcher"));
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Stops sending, and queues anything not yet sent to be sent after the restart.
+     */
+    @Terminator
+    public static void shutdown() {
+        NotificationDispatcher dispatcher = get();
+        List<Runnable> unsent = new ArrayList<Runnable>();
+        synchronized (dispatcher) {
+            dispatcher.shutDown = true;
+            if (dispatcher.executor != null) {
+                dispatcher.executor.shutdown();
+                dispatcher.executor.getQueue().drainTo(unsent);
+                dispatcher.executor = null;
+            }
+            unsent.addAll(dispatcher.retrying);
+            dispatcher.retrying.clear();
+        }
+
+        for (Runnable r : unsent) {
+            if (r instanceof Delivery) {
+                NotificationCoalescer.get().queue(((Delivery) r).batch);
+            }
+        }
+    }
+
+    /**
+     * Schedules another attempt at a failed delivery, or queues it for after the restart if Jenkins is shutting down.
+     */
+    private void retry(final Delivery next, long delaySeconds) {
+        synchronized (this) {
+            if (!shutDown) {
+                retrying.add(next);
+                Timer.get().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (NotificationDispatcher.this) {
+                            if (!retrying.remove(next)) {
+                                // Already queued by shutdown().
+                                return;
+                            }
+                        }
+                        try {
+                            getExecutor().execute(next);
+                        } catch (RejectedExecutionException rejected) {
+                            if (isShutDown()) {
+                                NotificationCoalescer.get().queue(next.batch);
+                            } else {
+                                record(next.batch, NotificationDeliveryAction.State.FAILED, next.attempt - 1,
+                                        "Queue full");
+                            }
+                        }
+                    }
+                }, delaySeconds, TimeUnit.SECONDS);
+                return;
+            }
+        }
+        NotificationCoalescer.get().queue(next.batch);
+    }
+
+    private synchronized boolean isShutDown() {
+        return shutDown;
+    }
+
+    private void record(List<Notification> batch, NotificationDeliveryAction.State state, int attempts,
+                        @CheckForNull String message) {
+        Set<String> runIds = new LinkedHashSet<String>();
+        for (Notification n : batch) {
+            if (n.getRunId() != null) {
+                runIds.add(n.getRunId());
+            }
+        }
+
+        Notification first = batch.get(0);
+        for (String runId : runIds) {
+            Run<?,?> run = Run.fromExternalizableId(runId);
+            if (run != null) {
+                try {
+                    NotificationDeliveryAction.record(run, first.getActionName(), first.getRecipient(), state,
+                            attempts, message);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not record notification delivery on " + runId, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A single attempt to deliver a batch.
+     */
+    private final class Delivery implements Runnable {
+        private final List<Notification> batch;
+        private final int attempt;
+
+        Delivery(List<Notification> batch, int attempt) {
+            this.batch = batch;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public void run() {
+            Notification first = batch.get(0);
+            try {
+                PipelineAction action = PipelineAction.getPipelineAction(first.getActionName(),
+                        PipelineActionType.NOTIFIER);
+                NotificationSender sender = action != null ? action.getNotificationSender() : null;
+                if (sender == null) {
+                    record(batch, NotificationDeliveryAction.State.FAILED, attempt,
+                            "No sender for action " + first.getActionName());
+                    return;
+                }
+
+                sender.send(first.getRecipient(), batch);
+                record(batch, NotificationDeliveryAction.State.DELIVERED, attempt, null);
+            } catch (Exception e) {
+                if (attempt < MAX_ATTEMPTS) {
+                    long backoff = INITIAL_BACKOFF_SECONDS * (1L << (attempt - 1));
+                    LOGGER.log(Level.FINE, "Failed to send notification(s) for action " + first.getActionName()
+                            + ", retrying in " + backoff + "s", e);
+                    retry(new Delivery(batch, attempt + 1), backoff);
+                } else {
+                    LOGGER.log(Level.WARNING, "Giving up sending " + batch.size() + " notification(s) for action "
+                            + first.getActionName() + " to " + first.getRecipient() + " after " + attempt
+                            + " attempt(s)", e);
+                    record(batch, NotificationDeliveryAction.State.FAILED, attempt, e.toString());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.notifications;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import io.jenkins.plugins.pipelineaction.PipelineAction;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Controller-side delivery for a {@link io.jenkins.plugins.pipelineaction.PipelineActionType#NOTIFIER} action. A
+ * {@link PipelineAction} that can deliver its notifications without running its script in the Pipeline returns one
+ * of these from {@link PipelineAction#getNotificationSender()}, which allows its notifications to be coalesced.
+ *
+ * Senders that need an optional plugin are registered as {@code @Extension(optional = true)} instead of being created
+ * by their action, which looks them up with {@link #forAction(String)} - so the action still loads without the plugin,
+ * and just isn't coalesced.
+ */
+public abstract class NotificationSender implements ExtensionPoint {
+
+    /**
+     * Finds the registered sender for an action.
+     *
+     * @param actionName The action name.
+     * @return The sender, or null if there's none - e.g. because the plugin it needs isn't installed.
+     */
+    @CheckForNull
+    public static NotificationSender forAction(String actionName) {
+        for (NotificationSender sender : ExtensionList.lookup(NotificationSender.class)) {
+            if (actionName.equals(sender.getActionName())) {
+                return sender;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The name of the action this sender is registered for, or null if it's only created by its action.
+     */
+    @CheckForNull
+    public String getActionName() {
+        return null;
+    }
+
+    /**
+     * Gets the recipient or channel key for the given notification fields. Notifications with the same action and
+     * recipient are coalesced together into one digest.
+     *
+     * @param fields The notification fields.
+     * @return A non-null key identifying the recipient.
+     */
+    public abstract @Nonnull String getRecipient(Map<String,String> fields);
+
+    /**
+     * Delivers one or more notifications to a single recipient. If more than one notification is given, they should
+     * be sent as one digest.
+     *
+     * @param recipient The recipient key shared by all the notifications.
+     * @param notifications The notifications to deliver, oldest first. Never empty.
+     * @throws Exception if delivery fails.
+     */
+    public abstract void send(String recipient, List<Notification> notifications) throws Exception;
+}
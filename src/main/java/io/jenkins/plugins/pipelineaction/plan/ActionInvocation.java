@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.plan;
+
+import javax.annotation.CheckForNull;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One intended "runPipelineAction" call, to be checked by {@link ActionPlanner}.
+ */
+public class ActionInvocation implements Serializable {
+    private final String name;
+    private final String type;
+    private final Map<String,Object> args;
+    private final boolean argsKnown;
+    private final int line;
+
+    /**
+     * @param name The action name, or null if it isn't known statically.
+     * @param type The requested type, as passed to "runPipelineAction" - e.g. "standard" or "notifier".
+     * @param args The arguments. For invocations found by scanning, non-literal values are null.
+     * @param argsKnown False if the arguments couldn't be worked out statically, so required fields can't be checked.
+     * @param line The line the invocation is on, or 0 if not known.
+     */
+    public ActionInvocation(@CheckForNull String name, String type, Map<String,Object> args, boolean argsKnown,
+                            int line) {
+        this.name = name;
+        this.type = type;
+        this.args = Collections.unmodifiableMap(new HashMap<String,Object>(args));
+        this.argsKnown = argsKnown;
+        this.line = line;
+    }
+
+    public ActionInvocation(String name, String type, Map<String,Object> args) {
+        this(name, type, args, true, 0);
+    }
+
+    @CheckForNull
+    public String getName() {
+        return name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Map<String,Object> getArgs() {
+        return args;
+    }
+
+    public boolean isArgsKnown() {
+        return argsKnown;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public String toString() {
+        return (line > 0 ? "line " + line + ": " : "") + (name != null ? name : "<dynamic>") + " (" + type + ")";
+    }
+
+    private static final long serialVersionUID = 1L;
+}
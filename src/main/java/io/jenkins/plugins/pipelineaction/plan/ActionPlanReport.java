@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.plan;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of checking a set of {@link ActionInvocation}s with {@link ActionPlanner}.
+ */
+public class ActionPlanReport implements Serializable {
+
+    /**
+     * The problems found with one invocation.
+     */
+    public static class Entry implements Serializable {
+        private final ActionInvocation invocation;
+        private final List<String> errors = new ArrayList<String>();
+        private final List<String> warnings = new ArrayList<String>();
+
+        Entry(ActionInvocation invocation) {
+            this.invocation = invocation;
+        }
+
+        public ActionInvocation getInvocation() {
+            return invocation;
+        }
+
+        public List<String> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+
+        public List<String> getWarnings() {
+            return Collections.unmodifiableList(warnings);
+        }
+
+        void error(String message) {
+            errors.add(message);
+        }
+
+        void warning(String message) {
+            warnings.add(message);
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private final List<String> errors = new ArrayList<String>();
+
+    void add(Entry entry) {
+        entries.add(entry);
+    }
+
+    void error(String message) {
+        errors.add(message);
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return Errors not tied to one invocation, such as a Jenkinsfile that doesn't parse.
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public int getErrorCount() {
+        int n = errors.size();
+        for (Entry e : entries) {
+            n += e.errors.size();
+        }
+        return n;
+    }
+
+    public boolean isOk() {
+        return getErrorCount() == 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Checked ").append(entries.size()).append(" action invocation(s), ")
+                .append(getErrorCount()).append(" error(s)\n");
+        for (String error : errors) {
+            sb.append("  ERROR: ").append(error).append('\n');
+        }
+        for (Entry e : entries) {
+            for (String error : e.errors) {
+                sb.append("  ERROR: ").append(e.invocation).append(": ").append(error).append('\n');
+            }
+            for (String warning : e.warnings) {
+                sb.append("  WARNING: ").append(e.invocation).append(": ").append(warning).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.plan;
+
+import com.google.inject.Inject;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import io.jenkins.plugins.pipelineaction.PipelineActionType;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowExecution;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.flow.FlowExecutionOwner;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks a pipeline's actions up front with {@link ActionPlanner}, printing the report. With no "invocations", the
+ * running Jenkinsfile is scanned for "runPipelineAction" calls. Otherwise each invocation is a map of "type"
+ * (defaulting to "standard") and "args", as they'd be passed to "runPipelineAction".
+ *
+ * Fails the build if there are errors, unless "failOnError: false" is given. Returns whether there were no errors.
+ */
+public class ActionPlanStep extends AbstractStepImpl {
+    private final List<Map<String,Object>> invocations;
+    private final boolean failOnError;
+
+    @DataBoundConstructor
+    public ActionPlanStep(List<Map<String,Object>> invocations, boolean failOnError) {
+        this.invocations = invocations;
+        this.failOnError = failOnError;
+    }
+
+    public List<Map<String,Object>> getInvocations() {
+        return invocations;
+    }
+
+    public boolean isFailOnError() {
+        return failOnError;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "pipelineActionPlan";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Check the pipeline actions a build will run";
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Step newInstance(Map<String,Object> arguments) throws Exception {
+            // The invocations are passed through as-is, rather than bound as nested describables.
+            Object failOnError = arguments.get("failOnError");
+            return new ActionPlanStep((List<Map<String,Object>>) arguments.get("invocations"),
+                    failOnError == null || Boolean.TRUE.equals(failOnError));
+        }
+    }
+
+    public static class Execution extends AbstractSynchronousNonBlockingStepExecution<Boolean> {
+        @Inject(optional = true)
+        private transient ActionPlanStep step;
+        @StepContextParameter
+        private transient Run<?,?> run;
+        @StepContextParameter
+        private transient TaskListener listener;
+
+        @Override
+        protected Boolean run() throws Exception {
+            ActionPlanReport report;
+            if (step.getInvocations() != null) {
+                report = ActionPlanner.plan(toInvocations(step.getInvocations()), run);
+            } else {
+                report = ActionPlanner.planScript(currentScript(), run);
+            }
+
+            listener.getLogger().print(report);
+            if (!report.isOk() && step.isFailOnError()) {
+                throw new AbortException(report.getErrorCount() + " error(s) found in pipeline actions");
+            }
+            return report.isOk();
+        }
+
+        @SuppressWarnings("unchecked")
+        private static List<ActionInvocation> toInvocations(List<Map<String,Object>> maps) {
+            List<ActionInvocation> invocations = new ArrayList<ActionInvocation>();
+            for (Map<String,Object> m : maps) {
+                Object type = m.get("type");
+                Map<String,Object> args = m.get("args") instanceof Map
+                        ? (Map<String,Object>) m.get("args")
+                        : Collections.<String,Object>emptyMap();
+                Object name = args.get("name");
+                invocations.add(new ActionInvocation(name != null ? name.toString() : "script",
+                        type != null ? type.toString() : PipelineActionType.STANDARD.getType(),
+                        args));
+            }
+            return invocations;
+        }
+
+        private String currentScript() throws Exception {
+            if (run instanceof FlowExecutionOwner.Executable) {
+                FlowExecution execution = ((FlowExecutionOwner.Executable) run).asFlowExecutionOwner().get();
+                if (execution instanceof CpsFlowExecution) {
+                    return ((CpsFlowExecution) execution).getScript();
+                }
+            }
+            throw new AbortException("Can only scan Pipeline scripts for actions - pass \"invocations\" instead");
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+}
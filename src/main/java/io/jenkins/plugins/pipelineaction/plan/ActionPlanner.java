@@ -0,0 +1,322 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.plan;
+
+import groovy.lang.GroovyShell;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import io.jenkins.plugins.pipelineaction.PipelineAction;
+import io.jenkins.plugins.pipelineaction.PipelineActionType;
+import io.jenkins.plugins.pipelineaction.RunPipelineAction;
+import jenkins.model.Jenkins;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.CodeVisitorSupport;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.MapEntryExpression;
+import org.codehaus.groovy.ast.expr.MapExpression;
+import org.codehaus.groovy.ast.expr.MethodCallExpression;
+import org.codehaus.groovy.ast.expr.PropertyExpression;
+import org.codehaus.groovy.ast.expr.TupleExpression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.Phases;
+
+import javax.annotation.CheckForNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks a pipeline's "runPipelineAction" calls up front, before any real work starts. Each invocation is resolved
+ * to its action, its type and required fields are checked, and every action used is compiled and validated - in
+ * parallel, once per action - which also warms the validation cache for when the build gets to it.
+ *
+ * Invocations can be given explicitly, or found by scanning a Jenkinsfile's syntax tree with {@link #scan(String)}.
+ */
+public final class ActionPlanner {
+
+    /**
+     * Number of threads compiling actions in parallel.
+     */
+    public static /* non-final for script console */ int POOL_SIZE =
+            Integer.getInteger(ActionPlanner.class.getName() + ".poolSize", 4);
+
+    private ActionPlanner() {
+    }
+
+    /**
+     * Finds the "runPipelineAction" calls in a Jenkinsfile, without running it. Only literal values are known -
+     * other argument values are null, and names that aren't literals are left null.
+     *
+     * @param script The Jenkinsfile.
+     * @return The invocations, in the order they appear.
+     * @throws CompilationFailedException if the script doesn't parse.
+     */
+    public static List<ActionInvocation> scan(String script) throws CompilationFailedException {
+        CompilationUnit cu = new CompilationUnit();
+        cu.addSource("Jenkinsfile", script);
+        cu.compile(Phases.CONVERSION);
+
+        final List<ActionInvocation> found = new ArrayList<ActionInvocation>();
+        CodeVisitorSupport visitor = new CodeVisitorSupport() {
+            @Override
+            public void visitMethodCallExpression(MethodCallExpression call) {
+                ActionInvocation invocation = toInvocation(call);
+                if (invocation != null) {
+                    found.add(invocation);
+                }
+                super.visitMethodCallExpression(call);
+            }
+        };
+
+        for (ModuleNode module : cu.getAST().getModules()) {
+            for (ClassNode c : module.getClasses()) {
+                for (MethodNode m : c.getMethods()) {
+                    if (m.getCode() != null) {
+                        m.getCode().visit(visitor);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    @CheckForNull
+    private static ActionInvocation toInvocation(MethodCallExpression call) {
+        boolean direct = call.isImplicitThis() && "runPipelineAction".equals(call.getMethodAsString());
+        boolean viaCall = call.getObjectExpression() instanceof VariableExpression
+                && "runPipelineAction".equals(((VariableExpression) call.getObjectExpression()).getName())
+                && "call".equals(call.getMethodAsString());
+        if (!direct && !viaCall) {
+            return null;
+        }
+
+        List<Expression> arguments = call.getArguments() instanceof TupleExpression
+                ? ((TupleExpression) call.getArguments()).getExpressions()
+                : Collections.<Expression>emptyList();
+
+        MapExpression map = null;
+        List<Expression> others = new ArrayList<Expression>();
+        for (Expression e : arguments) {
+            if (e instanceof MapExpression) {
+                // Also covers named arguments.
+                map = (MapExpression) e;
+            } else {
+                others.add(e);
+            }
+        }
+
+        // Without a map literal, the last argument is the map, passed in a variable.
+        Expression typeExpression = map != null
+                ? (others.isEmpty() ? null : others.get(0))
+                : (others.size() > 1 ? others.get(0) : null);
+        String type = PipelineActionType.STANDARD.getType();
+        if (typeExpression != null) {
+            type = literalType(typeExpression);
+        }
+
+        Map<String,Object> args = new LinkedHashMap<String,Object>();
+        String name = null;
+        boolean argsKnown = map != null;
+        if (map != null) {
+            name = "script";
+            for (MapEntryExpression entry : map.getMapEntryExpressions()) {
+                if (!(entry.getKeyExpression() instanceof ConstantExpression)) {
+                    argsKnown = false;
+                    continue;
+                }
+                String key = String.valueOf(((ConstantExpression) entry.getKeyExpression()).getValue());
+                Object value = entry.getValueExpression() instanceof ConstantExpression
+                        ? ((ConstantExpression) entry.getValueExpression()).getValue()
+                        : null;
+                args.put(key, value);
+            }
+            if (args.containsKey("name")) {
+                name = args.get("name") != null ? String.valueOf(args.get("name")) : null;
+            }
+        }
+
+        return new ActionInvocation(name, type, args, argsKnown, call.getLineNumber());
+    }
+
+    /**
+     * @return The type named by a literal, or {@link PipelineActionType#ANY} if it's only known at runtime, so that
+     * the call isn't checked against a type it might not have.
+     */
+    private static String literalType(Expression e) {
+        String type = null;
+        if (e instanceof ConstantExpression) {
+            Object value = ((ConstantExpression) e).getValue();
+            type = value != null ? value.toString() : null;
+        } else if (e instanceof PropertyExpression) {
+            // e.g. PipelineActionType.NOTIFIER
+            type = ((PropertyExpression) e).getPropertyAsString();
+        }
+        return type != null ? type : PipelineActionType.ANY.getType();
+    }
+
+    /**
+     * Scans a Jenkinsfile and checks the invocations found.
+     *
+     * @param script The Jenkinsfile.
+     * @param run The build to resolve actions for, or null for the current actions.
+     * @return The report - including an error if the script doesn't parse.
+     * @throws InterruptedException if interrupted while compiling actions.
+     */
+    public static ActionPlanReport planScript(String script, @CheckForNull Run<?,?> run) throws InterruptedException {
+        List<ActionInvocation> invocations;
+        try {
+            invocations = scan(script);
+        } catch (CompilationFailedException e) {
+            ActionPlanReport report = new ActionPlanReport();
+            report.error("Jenkinsfile could not be parsed - " + e.getMessage());
+            return report;
+        }
+        return plan(invocations, run);
+    }
+
+    /**
+     * Checks a list of invocations.
+     *
+     * @param invocations The invocations.
+     * @param run The build to resolve actions for, or null for the current actions.
+     * @return The report.
+     * @throws InterruptedException if interrupted while compiling actions.
+     */
+    public static ActionPlanReport plan(List<ActionInvocation> invocations, @CheckForNull Run<?,?> run)
+            throws InterruptedException {
+        Map<String,PipelineAction> actions = PipelineAction.pipelineActionMap(run);
+        ActionPlanReport report = new ActionPlanReport();
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, POOL_SIZE),
+                new NamingThreadFactory(new DaemonThreadFactory(), "PipelineActionPlanner"));
+        try {
+            // Compile each action used once, all in parallel.
+            Map<String,Future<String>> compiled = new HashMap<String,Future<String>>();
+            for (ActionInvocation i : invocations) {
+                final PipelineAction action = i.getName() != null ? actions.get(i.getName()) : null;
+                if (action != null && !compiled.containsKey(action.getName())) {
+                    compiled.put(action.getName(), pool.submit(new Callable<String>() {
+                        @Override
+                        public String call() {
+                            try {
+                                action.validate(new GroovyShell(Jenkins.getInstance().getPluginManager().uberClassLoader));
+                                return null;
+                            } catch (IllegalArgumentException e) {
+                                return e.getMessage();
+                            } catch (Exception e) {
+                                return "Could not compile action - " + e;
+                            }
+                        }
+                    }));
+                }
+            }
+
+            for (ActionInvocation i : invocations) {
+                ActionPlanReport.Entry entry = new ActionPlanReport.Entry(i);
+                check(i, actions, compiled, entry);
+                report.add(entry);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return report;
+    }
+
+    private static void check(ActionInvocation i, Map<String,PipelineAction> actions,
+                              Map<String,Future<String>> compiled, ActionPlanReport.Entry entry)
+            throws InterruptedException {
+        if (i.getName() == null) {
+            entry.warning("Action name isn't a literal, so the call can't be checked");
+            return;
+        }
+
+        PipelineActionType type;
+        try {
+            type = PipelineActionType.fromString(i.getType());
+        } catch (IllegalArgumentException e) {
+            entry.error(e.getMessage());
+            return;
+        }
+
+        PipelineAction action = actions.get(i.getName());
+        if (action == null) {
+            entry.error("No PipelineAction with name " + i.getName() + " exists.");
+            return;
+        }
+        if (type != PipelineActionType.ANY && action.pipelineActionType() != type) {
+            entry.error("PipelineAction with name " + i.getName() + " exists but is not of type '" + type.getType() + "'.");
+        }
+
+        if (i.isArgsKnown()) {
+            Set<String> missing = new TreeSet<String>();
+            Set<String> unknown = new TreeSet<String>();
+            for (Map.Entry<String,Boolean> f : action.getFields().entrySet()) {
+                if (f.getValue() && !i.getArgs().containsKey(f.getKey())) {
+                    missing.add(f.getKey());
+                }
+            }
+            if (!action.getFields().isEmpty()) {
+                for (String key : i.getArgs().keySet()) {
+                    if (!action.getFields().containsKey(key) && !RunPipelineAction.DISPATCHER_ARGS.contains(key)) {
+                        unknown.add(key);
+                    }
+                }
+            }
+            if (!missing.isEmpty()) {
+                entry.error("Missing required field(s) for '" + i.getName() + "' action: " + Util.join(missing, ", "));
+            }
+            if (!unknown.isEmpty()) {
+                entry.warning("Field(s) not used by the action: " + Util.join(unknown, ", "));
+            }
+        } else {
+            entry.warning("Arguments aren't a literal map, so required fields can't be checked");
+        }
+
+        try {
+            String error = compiled.get(action.getName()).get();
+            if (error != null) {
+                entry.error(error);
+            }
+        } catch (ExecutionException e) {
+            entry.error("Could not compile action - " + e.getCause());
+        }
+    }
+}
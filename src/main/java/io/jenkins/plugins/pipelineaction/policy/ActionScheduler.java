@@ -0,0 +1,243 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.policy;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import io.jenkins.plugins.pipelineaction.PipelineActionType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller-wide admission scheduler for node-using {@link io.jenkins.plugins.pipelineaction.PipelineAction}s,
+ * shared by all builds. Caps how many actions of each {@link PipelineActionType} run at once, and when actions have
+ * to wait, lets the cheapest through first - cost divided by the type's weight, so that short tail work like
+ * notifiers isn't stuck behind long compiles. Requests gain priority the longer they wait, so expensive actions
+ * aren't starved.
+ *
+ * Actions called outside a {@code node} block wait for their slot before they take an executor, so for them the caps
+ * also limit the executors in use. Actions called inside a node already hold one - they count against the caps but
+ * run straight away, see {@link ActionSlot}.
+ *
+ * Does nothing unless {@link #CAPS} or {@link #MAX_RUNNING} is set.
+ */
+@Extension
+public class ActionScheduler {
+    private static final Logger LOGGER = Logger.getLogger(ActionScheduler.class.getName());
+
+    /**
+     * Relative weight of each action type, as "type=weight" pairs. Higher weights get through sooner.
+     */
+    public static /* non-final for script console */ String WEIGHTS =
+            System.getProperty(ActionScheduler.class.getName() + ".weights", "notifier=4,reporter=2,scm=2,standard=1");
+
+    /**
+     * Maximum number of actions of each type running at once, as "type=count" pairs. Types not listed are uncapped.
+     */
+    public static /* non-final for script console */ String CAPS =
+            System.getProperty(ActionScheduler.class.getName() + ".caps", "");
+
+    /**
+     * Maximum number of node-using actions running at once across all types. 0 means unlimited.
+     */
+    public static /* non-final for script console */ int MAX_RUNNING =
+            Integer.getInteger(ActionScheduler.class.getName() + ".maxRunning", 0);
+
+    /**
+     * A waiting request gains the priority of one unit of cost for each this many seconds it has waited.
+     */
+    public static /* non-final for script console */ int AGING_SECONDS =
+            Integer.getInteger(ActionScheduler.class.getName() + ".agingSeconds", 60);
+
+    /**
+     * A request to run an action.
+     */
+    public static abstract class Request {
+        private final String action;
+        private final PipelineActionType type;
+        private final int cost;
+        private final long submittedAt = System.currentTimeMillis();
+
+        protected Request(String action, PipelineActionType type, int cost) {
+            this.action = action;
+            this.type = type;
+            this.cost = Math.max(cost, 0);
+        }
+
+        public String getAction() {
+            return action;
+        }
+
+        public PipelineActionType getType() {
+            return type;
+        }
+
+        /**
+         * Called, outside the scheduler's lock, once the action may run. It must be followed by
+         * {@link #release(PipelineActionType)} when the action finishes. A concurrent {@link #cancel(Request)} returns
+         * false once the request has been granted, so the requester has to reconcile the two itself.
+         */
+        protected abstract void granted();
+
+        double priority(Map<PipelineActionType,Integer> weights, long now) {
+            Integer weight = weights.get(type);
+            double aging = AGING_SECONDS > 0 ? (now - submittedAt) / (AGING_SECONDS * 1000.0) : 0;
+            return (double) cost / (weight != null && weight > 0 ? weight : 1) - aging;
+        }
+    }
+
+    private final List<Request> waiting = new ArrayList<Request>();
+
+    private final Map<PipelineActionType,Integer> running =
+            new EnumMap<PipelineActionType,Integer>(PipelineActionType.class);
+
+    private int totalRunning;
+
+    public static ActionScheduler get() {
+        return ExtensionList.lookup(ActionScheduler.class).get(ActionScheduler.class);
+    }
+
+    /**
+     * @return True if any caps are configured - otherwise actions never need to wait.
+     */
+    public boolean isEnabled() {
+        return MAX_RUNNING > 0 || !parse(CAPS).isEmpty();
+    }
+
+    /**
+     * Submits a request, granting it straight away if there's room.
+     */
+    public void submit(Request request) {
+        synchronized (this) {
+            waiting.add(request);
+        }
+        dispatch();
+    }
+
+    /**
+     * Withdraws a request that hasn't been granted yet.
+     *
+     * @return True if the request was still waiting.
+     */
+    public synchronized boolean cancel(Request request) {
+        return waiting.remove(request);
+    }
+
+    /**
+     * Releases the slot held by a finished action, letting the next waiting request through.
+     */
+    public void release(PipelineActionType type) {
+        synchronized (this) {
+            Integer n = running.get(type);
+            if (n != null && n > 0) {
+                running.put(type, n - 1);
+                totalRunning--;
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * Counts an action that runs without waiting for a slot against its type's cap - one running inside a node, or
+     * one that was already running before a restart. Must be followed by {@link #release(PipelineActionType)}.
+     */
+    public synchronized void reclaim(PipelineActionType type) {
+        running.put(type, getRunning(type) + 1);
+        totalRunning++;
+    }
+
+    public synchronized int getRunning(PipelineActionType type) {
+        Integer n = running.get(type);
+        return n != null ? n : 0;
+    }
+
+    public synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    private void dispatch() {
+        List<Request> granted = new ArrayList<Request>();
+        synchronized (this) {
+            final Map<PipelineActionType,Integer> weights = parse(WEIGHTS);
+            final long now = System.currentTimeMillis();
+            Map<PipelineActionType,Integer> caps = parse(CAPS);
+
+            Collections.sort(waiting, new Comparator<Request>() {
+                @Override
+                public int compare(Request a, Request b) {
+                    return Double.compare(a.priority(weights, now), b.priority(weights, now));
+                }
+            });
+
+            for (Iterator<Request> it = waiting.iterator(); it.hasNext(); ) {
+                if (MAX_RUNNING > 0 && totalRunning >= MAX_RUNNING) {
+                    break;
+                }
+                Request r = it.next();
+                Integer cap = caps.get(r.type);
+                if (cap != null && getRunning(r.type) >= cap) {
+                    continue;
+                }
+                it.remove();
+                running.put(r.type, getRunning(r.type) + 1);
+                totalRunning++;
+                granted.add(r);
+            }
+        }
+
+        for (Request r : granted) {
+            r.granted();
+        }
+    }
+
+    /**
+     * Parses "type=number" pairs, skipping any that aren't valid.
+     */
+    static Map<PipelineActionType,Integer> parse(String spec) {
+        Map<PipelineActionType,Integer> m = new EnumMap<PipelineActionType,Integer>(PipelineActionType.class);
+        if (spec == null) {
+            return m;
+        }
+        for (String pair : spec.split(",")) {
+            if (pair.trim().isEmpty()) {
+                continue;
+            }
+            String[] kv = pair.split("=", 2);
+            try {
+                m.put(PipelineActionType.fromString(kv[0].trim()), Integer.parseInt(kv[1].trim()));
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Ignoring invalid scheduler setting " + pair, e);
+            }
+        }
+        return m;
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.policy;
+
+import hudson.model.Computer;
+import io.jenkins.plugins.pipelineaction.PipelineActionType;
+import org.jenkinsci.plugins.workflow.steps.BodyExecution;
+import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+
+import javax.annotation.CheckForNull;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * A block step's claim on an {@link ActionScheduler} slot for the body it runs. Shared by the steps that gate an action
+ * on the scheduler, so that granting, stopping and resuming work the same way for all of them.
+ *
+ * <ul>
+ *     <li>Inside another action's slot in the same build, the body runs straight away under the outer slot - waiting
+ *     for a second one could deadlock the build against itself.</li>
+ *     <li>Outside a node, an action that uses one waits for a slot before it takes an executor - "runPipelineAction"
+ *     runs it in a {@code node} of its own once the slot is granted. Actions that don't use a node run straight away,
+ *     so cheap work isn't held up behind capped actions.</li>
+ *     <li>Inside a {@code node} block, the executor is already taken before the action is reached, so the cap can't
+ *     keep it free. The body is counted against the caps but runs straight away - waiting while holding the executor
+ *     could deadlock against slot holders waiting for one. Call capped actions outside node blocks for the caps to
+ *     hold.</li>
+ * </ul>
+ *
+ * The slot is released by the body's callback, or by {@link #stop(Throwable)} if the step is stopped before the body
+ * starts.
+ */
+public final class ActionSlot implements Serializable {
+    private final StepContext context;
+    private final String action;
+    private final PipelineActionType type;
+    private final int cost;
+    private final boolean usesNode;
+    private final BodyExecutionCallback callback;
+
+    /**
+     * True if the body counts against the scheduler's caps. Guarded by this, as are the fields below.
+     */
+    private boolean counted;
+
+    /**
+     * True while a request is waiting for a slot.
+     */
+    private boolean waiting;
+
+    /**
+     * True if the body has to wait for a slot before each run, rather than running straight away.
+     */
+    private boolean queued;
+
+    private Throwable stopCause;
+
+    private BodyExecution body;
+
+    private transient ActionScheduler.Request request;
+
+    /**
+     * @param context The step's context.
+     * @param action The action name.
+     * @param type The action type.
+     * @param cost The action's cost.
+     * @param usesNode Whether the action uses a node - if not, and it's called outside of one, there's nothing to cap.
+     * @param callback Called when the body finishes, after the slot has been released.
+     */
+    public ActionSlot(StepContext context, String action, PipelineActionType type, int cost, boolean usesNode,
+                      BodyExecutionCallback callback) {
+        this.context = context;
+        this.action = action;
+        this.type = type;
+        this.cost = cost;
+        this.usesNode = usesNode;
+        this.callback = callback;
+    }
+
+    /**
+     * Starts the body, once there's a slot for it if it has to wait. ONLY TO BE RUN FROM WITHIN A CPS THREAD.
+     *
+     * @return True if the body had to wait for a slot.
+     * @throws IOException if the context can't be read.
+     * @throws InterruptedException if interrupted while reading the context.
+     */
+    public boolean start() throws IOException, InterruptedException {
+        if (context.get(Held.class) != null) {
+            startBody(false);
+            return false;
+        }
+        if (context.get(Computer.class) != null) {
+            ActionScheduler.get().reclaim(type);
+            startBody(true);
+            return false;
+        }
+        if (!usesNode) {
+            startBody(false);
+            return false;
+        }
+
+        enqueue();
+        synchronized (this) {
+            return waiting;
+        }
+    }
+
+    private void enqueue() {
+        synchronized (this) {
+            queued = true;
+            waiting = true;
+            request = new ActionScheduler.Request(action, type, cost) {
+                @Override
+                protected void granted() {
+                    ActionSlot.this.granted();
+                }
+            };
+        }
+        ActionScheduler.get().submit(request);
+    }
+
+    private void granted() {
+        Throwable cause;
+        synchronized (this) {
+            waiting = false;
+            if (stopCause == null) {
+                startBody(true);
+                return;
+            }
+            cause = stopCause;
+        }
+        // Stopped between being granted and getting here - the body never ran.
+        ActionScheduler.get().release(type);
+        context.onFailure(cause);
+    }
+
+    private synchronized void startBody(boolean count) {
+        counted = count;
+        body = context.newBodyInvoker()
+                .withContext(new Held())
+                .withCallback(new Releasing(this, count ? type : null, callback))
+                .start();
+    }
+
+    /**
+     * Starts the body again once its last run has finished, e.g. to retry it - waiting for a slot again if the first
+     * run had to, and otherwise counted the same way. Fails the step instead if it was stopped in the meantime. Unlike
+     * {@link #start()}, can be called from any thread.
+     *
+     * @return True if the body had to wait for a slot.
+     */
+    public boolean restart() {
+        Throwable cause;
+        boolean queue;
+        boolean count;
+        synchronized (this) {
+            cause = stopCause;
+            queue = queued;
+            count = counted;
+            body = null;
+        }
+        if (cause != null) {
+            context.onFailure(cause);
+            return false;
+        }
+
+        if (queue) {
+            enqueue();
+            synchronized (this) {
+                return waiting;
+            }
+        }
+        if (count) {
+            ActionScheduler.get().reclaim(type);
+        }
+        startBody(count);
+        return false;
+    }
+
+    /**
+     * Cancels the running body, if any, without stopping the step - its callback decides what happens next.
+     *
+     * @param cause Why the body was cancelled.
+     */
+    public void interrupt(Throwable cause) {
+        BodyExecution running;
+        synchronized (this) {
+            running = body;
+        }
+        if (running != null) {
+            running.cancel(cause);
+        }
+    }
+
+    /**
+     * Stops the step - withdrawing the request if it's still waiting, and otherwise cancelling the body, whose
+     * callback then releases the slot.
+     *
+     * @param cause Why the step was stopped.
+     */
+    public void stop(Throwable cause) {
+        BodyExecution running;
+        synchronized (this) {
+            stopCause = cause;
+            running = body;
+            if (running == null) {
+                if (waiting && request != null && !ActionScheduler.get().cancel(request)) {
+                    // Already granted - granted() will see the stop cause and clean up.
+                    return;
+                }
+                waiting = false;
+            }
+        }
+
+        if (running != null) {
+            running.cancel(cause);
+        } else {
+            context.onFailure(cause);
+        }
+    }
+
+    /**
+     * Picks up where we left off after a restart - counting a running body against the caps again, or waiting for a
+     * slot again.
+     */
+    public void onResume() {
+        boolean wasWaiting;
+        synchronized (this) {
+            if (counted && body != null) {
+                ActionScheduler.get().reclaim(type);
+            }
+            wasWaiting = waiting;
+        }
+        if (wasWaiting) {
+            enqueue();
+        }
+    }
+
+    /**
+     * Forgets a body that has finished, so that it isn't counted again on resume or cancelled by a later stop.
+     */
+    private synchronized void finished() {
+        body = null;
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Marks a body as running in an action's slot.
+     */
+    static final class Held implements Serializable {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Releases the slot, if one was counted, before handing the outcome on.
+     */
+    private static final class Releasing extends BodyExecutionCallback {
+        private final ActionSlot slot;
+        private final PipelineActionType type;
+        private final BodyExecutionCallback delegate;
+
+        Releasing(ActionSlot slot, @CheckForNull PipelineActionType type, BodyExecutionCallback delegate) {
+            this.slot = slot;
+            this.type = type;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onStart(StepContext context) {
+            delegate.onStart(context);
+        }
+
+        @Override
+        public void onSuccess(StepContext context, Object result) {
+            release();
+            delegate.onSuccess(context, result);
+        }
+
+        @Override
+        public void onFailure(StepContext context, Throwable t) {
+            release();
+            delegate.onFailure(context, t);
+        }
+
+        private void release() {
+            slot.finished();
+            if (type != null) {
+                ActionScheduler.get().release(type);
+            }
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+}
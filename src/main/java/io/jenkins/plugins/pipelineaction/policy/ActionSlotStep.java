@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.policy;
+
+import com.google.inject.Inject;
+import hudson.Extension;
+import hudson.model.TaskListener;
+import io.jenkins.plugins.pipelineaction.PipelineActionType;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Runs its body in an {@link ActionScheduler} slot - see {@link ActionSlot} for when it waits for one. Used internally
+ * by "runPipelineAction" when scheduling caps are configured.
+ */
+public class ActionSlotStep extends AbstractStepImpl {
+    private final String action;
+    private String type = PipelineActionType.STANDARD.getType();
+    private int cost = 1;
+    private boolean usesNode = true;
+
+    @DataBoundConstructor
+    public ActionSlotStep(String action) {
+        this.action = action;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    @DataBoundSetter
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    @DataBoundSetter
+    public void setCost(int cost) {
+        this.cost = cost;
+    }
+
+    public boolean isUsesNode() {
+        return usesNode;
+    }
+
+    @DataBoundSetter
+    public void setUsesNode(boolean usesNode) {
+        this.usesNode = usesNode;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "pipelineActionSlot";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Wait for a slot to run a pipeline action";
+        }
+
+        @Override
+        public boolean takesImplicitBlockArgument() {
+            return true;
+        }
+    }
+
+    public static class Execution extends AbstractStepExecutionImpl {
+        @Inject(optional = true)
+        private transient ActionSlotStep step;
+        @StepContextParameter
+        private transient TaskListener listener;
+
+        private ActionSlot slot;
+
+        @Override
+        public boolean start() throws Exception {
+            slot = new ActionSlot(getContext(), step.getAction(), PipelineActionType.fromString(step.getType()),
+                    step.getCost(), step.isUsesNode(), BodyExecutionCallback.wrap(getContext()));
+            if (slot.start()) {
+                listener.getLogger().println("Waiting for a slot to run action '" + step.getAction() + "'");
+            }
+            return false;
+        }
+
+        @Override
+        public void stop(Throwable cause) throws Exception {
+            if (slot != null) {
+                slot.stop(cause);
+            } else {
+                getContext().onFailure(cause);
+            }
+        }
+
+        @Override
+        public void onResume() {
+            super.onResume();
+            if (slot != null) {
+                slot.onResume();
+            }
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+}
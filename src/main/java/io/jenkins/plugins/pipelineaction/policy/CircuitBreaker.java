@@ -0,0 +1,159 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.policy;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller-wide circuit breaker for {@link io.jenkins.plugins.pipelineaction.PipelineAction}s, shared by all builds.
+ * After {@link #FAILURE_THRESHOLD} consecutive failures of an action, the circuit opens and further invocations fail
+ * (or are skipped) immediately for {@link #OPEN_SECONDS}. After that, a single trial invocation is let through - if
+ * it succeeds the circuit closes again, otherwise it stays open for another period.
+ *
+ * Only used for actions that opt in, via {@link io.jenkins.plugins.pipelineaction.PipelineAction#usesCircuitBreaker()}
+ * or the "policy" argument to "runPipelineAction".
+ */
+@Extension
+public class CircuitBreaker {
+
+    /**
+     * Number of consecutive failures, across all builds, after which an action's circuit opens.
+     */
+    public static /* non-final for script console */ int FAILURE_THRESHOLD =
+            Integer.getInteger(CircuitBreaker.class.getName() + ".failureThreshold", 5);
+
+    /**
+     * How long an action's circuit stays open before a trial invocation is allowed, in seconds.
+     */
+    public static /* non-final for script console */ int OPEN_SECONDS =
+            Integer.getInteger(CircuitBreaker.class.getName() + ".openSeconds", 60);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final Map<String,Circuit> circuits = new HashMap<String,Circuit>();
+
+    public static CircuitBreaker get() {
+        return ExtensionList.lookup(CircuitBreaker.class).get(CircuitBreaker.class);
+    }
+
+    private Circuit circuit(String action) {
+        synchronized (circuits) {
+            Circuit c = circuits.get(action);
+            if (c == null) {
+                c = new Circuit();
+                circuits.put(action, c);
+            }
+            return c;
+        }
+    }
+
+    /**
+     * Checks whether an invocation of the given action should go ahead.
+     *
+     * @param action The action name.
+     * @return False if the action's circuit is open.
+     */
+    public boolean allowRequest(String action) {
+        return circuit(action).allowRequest(System.currentTimeMillis());
+    }
+
+    public void recordSuccess(String action) {
+        circuit(action).recordSuccess();
+    }
+
+    public void recordFailure(String action) {
+        circuit(action).recordFailure(System.currentTimeMillis());
+    }
+
+    /**
+     * Records that an invocation was aborted, so that it counts neither way - but if it was the trial, another one
+     * can go ahead.
+     */
+    public void recordAbort(String action) {
+        circuit(action).recordAbort();
+    }
+
+    public State getState(String action) {
+        return circuit(action).getState(System.currentTimeMillis());
+    }
+
+    private static final class Circuit {
+        private int failures;
+        private long openedAt;
+        private long trialStartedAt;
+
+        private static long openMillis() {
+            return TimeUnit.SECONDS.toMillis(OPEN_SECONDS);
+        }
+
+        synchronized State getState(long now) {
+            if (failures < FAILURE_THRESHOLD) {
+                return State.CLOSED;
+            }
+            return now - openedAt < openMillis() ? State.OPEN : State.HALF_OPEN;
+        }
+
+        synchronized boolean allowRequest(long now) {
+            switch (getState(now)) {
+                case CLOSED:
+                    return true;
+                case HALF_OPEN:
+                    // Only let one trial through at a time - but don't wait forever on a trial that never reported back.
+                    if (trialStartedAt == 0 || now - trialStartedAt >= openMillis()) {
+                        trialStartedAt = now;
+                        return true;
+                    }
+                    return false;
+                default:
+                    return false;
+            }
+        }
+
+        synchronized void recordSuccess() {
+            failures = 0;
+            trialStartedAt = 0;
+        }
+
+        synchronized void recordAbort() {
+            trialStartedAt = 0;
+        }
+
+        synchronized void recordFailure(long now) {
+            failures++;
+            trialStartedAt = 0;
+            if (failures >= FAILURE_THRESHOLD) {
+                openedAt = now;
+            }
+        }
+    }
+}
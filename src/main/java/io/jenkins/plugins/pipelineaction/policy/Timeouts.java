@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.policy;
+
+import hudson.model.Result;
+import jenkins.model.CauseOfInterruption;
+import org.jenkinsci.plugins.workflow.steps.FlowInterruptedException;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Tells interruptions caused by the "timeout" step apart from ones caused by someone aborting the build or rejecting
+ * an input. Shared by the "input" action's timeout and the retry policy.
+ */
+@Restricted(NoExternalUse.class)
+public final class Timeouts {
+
+    /**
+     * Simple name of the {@link CauseOfInterruption} the "timeout" step interrupts its body with. Matched by name,
+     * since workflow-basic-steps is only a test dependency.
+     */
+    static final String EXCEEDED_TIMEOUT = "ExceededTimeout";
+
+    private Timeouts() {
+    }
+
+    /**
+     * Interrupts a body that ran over its time limit, for blocks that enforce an action's timeout themselves rather
+     * than through the "timeout" step. Shares that step's cause name, so {@link #isTimeout} treats both the same.
+     *
+     * @param seconds The time limit.
+     * @return The interruption to cancel the body with.
+     */
+    public static FlowInterruptedException exceeded(int seconds) {
+        return new FlowInterruptedException(Result.ABORTED, new ExceededTimeout(seconds));
+    }
+
+    static final class ExceededTimeout extends CauseOfInterruption {
+        private final int seconds;
+
+        ExceededTimeout(int seconds) {
+            this.seconds = seconds;
+        }
+
+        @Override
+        public String getShortDescription() {
+            return "Timeout of " + seconds + "s has been exceeded";
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * @param e An interruption caught around a "timeout" step.
+     * @return True if it was caused by the timeout elapsing, false if the build was aborted or the input rejected -
+     * even if that happened after the time limit had passed.
+     */
+    public static boolean isTimeout(FlowInterruptedException e) {
+        for (CauseOfInterruption cause : e.getCauses()) {
+            if (cause.getClass().getSimpleName().equals(EXCEEDED_TIMEOUT)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.sources;
+
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.GroovyShell;
+import io.jenkins.plugins.pipelineaction.PipelineAction;
+import io.jenkins.plugins.pipelineaction.PipelineActionType;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.apache.commons.lang.exception.ExceptionUtils.getFullStackTrace;
+
+/**
+ * A {@link PipelineAction} loaded from a {@link PipelineActionArchive}. Everything but the source comes from the
+ * archive's index - the source is only read from the archive the first time it's needed.
+ */
+public class ArchivePipelineAction extends PipelineAction {
+    private final PipelineActionArchive archive;
+    private final PipelineActionArchive.Entry entry;
+    private final long generation;
+
+    public ArchivePipelineAction(PipelineActionArchive archive, PipelineActionArchive.Entry entry, long generation) {
+        this.archive = archive;
+        this.entry = entry;
+        this.generation = generation;
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return entry.getName();
+    }
+
+    @Nonnull
+    @Override
+    public String getPipelineActionClass() {
+        return entry.getPipelineActionClass();
+    }
+
+    @Override
+    public PipelineActionType pipelineActionType() {
+        return entry.getType();
+    }
+
+    @Override
+    public Map<String, Boolean> getFields() {
+        return entry.getFields();
+    }
+
+    @Override
+    public Boolean usesNode() {
+        return entry.isUsesNode();
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Reads the source from the archive the first time it's needed.
+     *
+     * @return The action's source.
+     * @throws IllegalStateException if the source can't be read from the archive, or doesn't match its checksum.
+     */
+    @Override
+    public GroovyCodeSource getScriptSource() throws Exception {
+        if (scriptSource == null) {
+            try {
+                GroovyCodeSource gsc = new GroovyCodeSource(archive.readSource(entry),
+                        entry.getPipelineActionClass() + ".groovy",
+                        GroovyShell.DEFAULT_CODE_BASE);
+                gsc.setCachable(true);
+
+                scriptSource = gsc;
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read script source from archive - " + getFullStackTrace(e));
+            }
+        }
+
+        return scriptSource;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.sources;
+
+import hudson.Extension;
+import io.jenkins.plugins.pipelineaction.PipelineAction;
+import io.jenkins.plugins.pipelineaction.PipelineActionGenerations;
+import io.jenkins.plugins.pipelineaction.PipelineActionSet;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link PipelineAction}s bundled in a single {@link PipelineActionArchive}, by default
+ * {@code $JENKINS_HOME/pipeline-actions.par}. Only the archive's index is read when it changes - sources are read
+ * on demand.
+ */
+@Extension
+public class ArchivePipelineActionSet extends PipelineActionSet {
+    private static final Logger LOGGER = Logger.getLogger(ArchivePipelineActionSet.class.getName());
+
+    /**
+     * Path of the archive to load actions from, if not the default.
+     */
+    public static /* non-final for script console */ String ARCHIVE =
+            System.getProperty(ArchivePipelineActionSet.class.getName() + ".archive");
+
+    private final PipelineActionGenerations generations = new PipelineActionGenerations();
+
+    /**
+     * Path, size and modification time of the archive as of the last rebuild, or {@link #ABSENT} if there was no
+     * archive.
+     */
+    private volatile String fingerprint;
+
+    /**
+     * Fingerprint for a missing archive, so that lookups don't keep rebuilding when there's nothing to load.
+     */
+    static final String ABSENT = "absent";
+
+    public static File getArchiveFile() {
+        return ARCHIVE != null ? new File(ARCHIVE) : new File(Jenkins.getInstance().getRootDir(), "pipeline-actions.par");
+    }
+
+    /**
+     * Reloads the archive's index if the archive has changed, publishing its actions as a new generation.
+     */
+    @Override
+    public synchronized void rebuild() {
+        File file = getArchiveFile();
+        if (!file.isFile()) {
+            fingerprint = ABSENT;
+            return;
+        }
+
+        String newFingerprint = file.getPath() + ':' + file.length() + ':' + file.lastModified();
+        if (newFingerprint.equals(fingerprint))
+            return;
+
+        // Don't try again until the archive changes, whether or not it can be read.
+        fingerprint = newFingerprint;
+
+        PipelineActionArchive archive;
+        try {
+            archive = PipelineActionArchive.open(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not load pipeline actions from " + file + ", keeping previous actions", e);
+            return;
+        }
+
+        long nextGeneration = Math.max(generations.getStable() + 1, System.currentTimeMillis());
+        List<PipelineAction> list = new ArrayList<PipelineAction>();
+        for (PipelineActionArchive.Entry entry : archive.getEntries()) {
+            list.add(new ArchivePipelineAction(archive, entry, nextGeneration));
+        }
+        generations.publish(nextGeneration, list);
+    }
+
+    @Override
+    protected PipelineActionGenerations getGenerations() {
+        return generations;
+    }
+
+    @Override
+    public Iterator<PipelineAction> iterator() {
+        // Only the first lookup loads the archive here - after that, changes are picked up by refreshes.
+        if (fingerprint == null) {
+            rebuild();
+        }
+        return generations.getActions().iterator();
+    }
+}
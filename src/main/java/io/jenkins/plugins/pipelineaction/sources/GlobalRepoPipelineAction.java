@@ -41,6 +41,7 @@ public class GlobalRepoPipelineAction extends PipelineAction {
     private final PipelineActionType pipelineActionType;
     private final Map<String,Boolean> fields;
     private final Boolean usesNode;
+    private final long generation;
 
 
     /**
@@ -61,12 +62,29 @@ public class GlobalRepoPipelineAction extends PipelineAction {
                                     PipelineActionType pipelineActionType,
                                     Map<String,Boolean> fields,
                                     Boolean usesNode) {
+        this(scriptSource, name, pipelineActionClass, pipelineActionType, fields, usesNode, 0);
+    }
+
+    /**
+     * As {@link #GlobalRepoPipelineAction(GroovyCodeSource, String, String, PipelineActionType, Map, Boolean)}, but
+     * also recording the generation of the {@link GlobalRepoPipelineActionSet} the action was loaded in.
+     *
+     * @param generation The generation this action was loaded in.
+     */
+    public GlobalRepoPipelineAction(GroovyCodeSource scriptSource,
+                                    String name,
+                                    String pipelineActionClass,
+                                    PipelineActionType pipelineActionType,
+                                    Map<String,Boolean> fields,
+                                    Boolean usesNode,
+                                    long generation) {
         this.scriptSource = scriptSource;
         this.name = name;
         this.pipelineActionClass = pipelineActionClass;
         this.pipelineActionType = pipelineActionType;
         this.fields = fields;
         this.usesNode = usesNode;
+        this.generation = generation;
     }
 
     @Nonnull
@@ -96,6 +114,11 @@ public class GlobalRepoPipelineAction extends PipelineAction {
         return usesNode;
     }
 
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
     /**
      * Gets the {@link GroovyCodeSource} defined at initialization time.
      *
@@ -19,8 +19,8 @@ package io.jenkins.plugins.pipelineaction.sources;
 import groovy.lang.GroovyCodeSource;
 import hudson.Extension;
 import hudson.ExtensionList;
-import hudson.util.CopyOnWriteList;
 import io.jenkins.plugins.pipelineaction.PipelineAction;
+import io.jenkins.plugins.pipelineaction.PipelineActionGenerations;
 import io.jenkins.plugins.pipelineaction.PipelineActionSet;
 import io.jenkins.plugins.pipelineaction.PipelineActionType;
 import org.apache.commons.io.FileUtils;
@@ -42,7 +42,19 @@ public class GlobalRepoPipelineActionSet extends PipelineActionSet {
     private @Inject
     WorkflowLibRepository repo;
 
-    private volatile CopyOnWriteList<PipelineAction> ours;
+    private final PipelineActionGenerations generations = new PipelineActionGenerations();
+
+    /**
+     * Paths, sizes and modification times of the action sources as of the last rebuild, so that we only reload them
+     * - and start a new generation - when something has actually changed. {@link #ABSENT} if there was no actions
+     * directory.
+     */
+    private volatile String fingerprint;
+
+    /**
+     * Fingerprint for a missing actions directory, so that lookups don't keep rebuilding when there's nothing to load.
+     */
+    static final String ABSENT = "absent";
 
     /**
      * Rebuilds the list of {@link GlobalRepoPipelineAction}s and update {@link ExtensionList} accordingly.
@@ -50,9 +62,6 @@ public class GlobalRepoPipelineActionSet extends PipelineActionSet {
     @Override
     public synchronized void rebuild() {
         File actionsDir = new File(repo.workspace, GlobalRepoPipelineAction.ACTIONS_PREFIX);
-        // first time, build the initial list
-        if (ours == null)
-            ours = new CopyOnWriteList<PipelineAction>();
 
         if (actionsDir.exists()) {
             Collection<File> children = FileUtils.listFiles(actionsDir,
@@ -60,11 +69,22 @@ public class GlobalRepoPipelineActionSet extends PipelineActionSet {
                     true // Recursive
             );
 
+            List<File> sources = new ArrayList<File>();
+            for (File child : children) {
+                if (child.getName().endsWith(".groovy") && !child.isDirectory())
+                    sources.add(child);
+            }
+            Collections.sort(sources);
+
+            String newFingerprint = fingerprint(sources);
+            if (newFingerprint.equals(fingerprint))
+                return;
+
             List<PipelineAction> list = new ArrayList<PipelineAction>();
+            // Generations only live in memory, so base them on the clock to keep them distinct across restarts.
+            long nextGeneration = Math.max(generations.getStable() + 1, System.currentTimeMillis());
 
-            for (File child : children) {
-                if (!child.getName().endsWith(".groovy") || child.isDirectory())
-                    continue;
+            for (File child : sources) {
 
                 String className = child.getName().substring(0, child.getName().length() - 7);
                 // Using className as name as well for right now.
@@ -76,7 +96,8 @@ public class GlobalRepoPipelineActionSet extends PipelineActionSet {
                             className,
                             PipelineActionType.STANDARD, // Only supporting standard from global repo for now.
                             Collections.<String, Boolean>emptyMap(), // No fields defined for now.
-                            true // Defaulting <></>o needing a node
+                            true, // Defaulting <></>o needing a node
+                            nextGeneration
                     );
 
                     list.add(action);
@@ -85,17 +106,38 @@ public class GlobalRepoPipelineActionSet extends PipelineActionSet {
                     throw new IllegalStateException("Could not open script source - " + getFullStackTrace(e));
 
                 }
-                ours.replaceBy(list);
             }
+            generations.publish(nextGeneration, list);
+            fingerprint = newFingerprint;
+        } else {
+            fingerprint = ABSENT;
         }
     }
 
+    private static String fingerprint(List<File> sources) {
+        StringBuilder sb = new StringBuilder();
+        for (File f : sources) {
+            sb.append(f.getPath()).append(':').append(f.length()).append(':').append(f.lastModified()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    protected PipelineActionGenerations getGenerations() {
+        return generations;
+    }
+
     @Override
     public Iterator<PipelineAction> iterator() {
-        if (ours==null) {
+        // Only the first lookup loads the actions here - after that, changes are picked up by refreshes.
+        if (fingerprint == null) {
             rebuild();
         }
-        return ours.iterator();
+        return generations.getActions().iterator();
     }
 
 }
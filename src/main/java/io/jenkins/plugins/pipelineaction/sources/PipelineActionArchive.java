@@ -0,0 +1,374 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.sources;
+
+import hudson.Util;
+import io.jenkins.plugins.pipelineaction.PipelineActionType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A single file bundling many pipeline actions. The file starts with an index of every action's name, class, type,
+ * fields, whether it uses a node, and the offset, length and SHA-256 of its source, followed by the sources:
+ *
+ * <pre>
+ * "PACTARCH" | format version (int) | index length (int) | index | sources...
+ * </pre>
+ *
+ * Opening an archive reads just the index - the file is memory-mapped, and each source is only read, and checked
+ * against its hash, when it's asked for. Archives are written with entries sorted by name and no timestamps, so the
+ * same actions always give byte-for-byte the same archive.
+ *
+ * Archives should be replaced by writing a new file and renaming it into place - {@link Writer#writeTo(File)} does
+ * this - since an archive that's overwritten in place while mapped will fail its hash checks.
+ */
+public final class PipelineActionArchive {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte[] MAGIC = "PACTARCH".getBytes(Charset.forName("US-ASCII"));
+
+    private static final int VERSION = 1;
+
+    static final int HEADER_LENGTH = MAGIC.length + 8;
+
+    /**
+     * An index entry describing one action in the archive.
+     */
+    public static final class Entry {
+        private final String name;
+        private final String pipelineActionClass;
+        private final PipelineActionType type;
+        private final Map<String,Boolean> fields;
+        private final boolean usesNode;
+        private final long offset;
+        private final int length;
+        private final String sha256;
+
+        Entry(String name, String pipelineActionClass, PipelineActionType type, Map<String,Boolean> fields,
+              boolean usesNode, long offset, int length, String sha256) {
+            this.name = name;
+            this.pipelineActionClass = pipelineActionClass;
+            this.type = type;
+            this.fields = Collections.unmodifiableMap(fields);
+            this.usesNode = usesNode;
+            this.offset = offset;
+            this.length = length;
+            this.sha256 = sha256;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getPipelineActionClass() {
+            return pipelineActionClass;
+        }
+
+        public PipelineActionType getType() {
+            return type;
+        }
+
+        public Map<String,Boolean> getFields() {
+            return fields;
+        }
+
+        public boolean isUsesNode() {
+            return usesNode;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+    }
+
+    private final File file;
+    private final ByteBuffer data;
+    private final List<Entry> entries;
+
+    private PipelineActionArchive(File file, ByteBuffer data, List<Entry> entries) {
+        this.file = file;
+        this.data = data;
+        this.entries = entries;
+    }
+
+    /**
+     * Opens an archive, reading its index.
+     *
+     * @param file The archive file.
+     * @return The opened archive.
+     * @throws IOException if the file can't be read or isn't a valid archive.
+     */
+    public static PipelineActionArchive open(File file) throws IOException {
+        MappedByteBuffer buf;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            // The mapping stays valid after the channel is closed.
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } finally {
+            raf.close();
+        }
+
+        byte[] magic = new byte[MAGIC.length];
+        if (buf.remaining() < HEADER_LENGTH) {
+            throw new IOException("Not a pipeline action archive: " + file);
+        }
+        buf.get(magic);
+        int version = buf.getInt();
+        int indexLength = buf.getInt();
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a pipeline action archive: " + file);
+        }
+        if (version != VERSION) {
+            throw new IOException("Unsupported pipeline action archive version " + version + ": " + file);
+        }
+        if (indexLength < 0 || indexLength > buf.remaining()) {
+            throw new IOException("Truncated pipeline action archive: " + file);
+        }
+
+        byte[] index = new byte[indexLength];
+        buf.get(index);
+        ByteBuffer data = buf.slice();
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+        int count = in.readInt();
+        // Every entry takes up more than one byte of the index, so this bounds the count before we allocate for it.
+        if (count < 0 || count > indexLength) {
+            throw new IOException("Corrupt index in pipeline action archive (" + count + " entries): " + file);
+        }
+        List<Entry> entries = new ArrayList<Entry>(count);
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            String pipelineActionClass = in.readUTF();
+            String typeName = in.readUTF();
+            PipelineActionType type;
+            try {
+                type = PipelineActionType.fromString(typeName);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Entry '" + name + "' has unknown type '" + typeName
+                        + "' in pipeline action archive: " + file, e);
+            }
+            int fieldCount = in.readInt();
+            if (fieldCount < 0 || fieldCount > indexLength) {
+                throw new IOException("Entry '" + name + "' has a corrupt field list in pipeline action archive: "
+                        + file);
+            }
+            Map<String,Boolean> fields = new TreeMap<String,Boolean>();
+            for (int f = 0; f < fieldCount; f++) {
+                String field = in.readUTF();
+                fields.put(field, in.readBoolean());
+            }
+            boolean usesNode = in.readBoolean();
+            long offset = in.readLong();
+            int length = in.readInt();
+            String sha256 = in.readUTF();
+            if (offset < 0 || length < 0 || offset > data.capacity() - length) {
+                throw new IOException("Entry '" + name + "' lies outside pipeline action archive: " + file);
+            }
+            entries.add(new Entry(name, pipelineActionClass, type, fields, usesNode, offset, length, sha256));
+        }
+
+        return new PipelineActionArchive(file, data, Collections.unmodifiableList(entries));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return The index entries, sorted by name.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Gets a read-only view of an entry's source, without copying it.
+     *
+     * @param entry An entry from {@link #getEntries()}.
+     * @return The source bytes.
+     */
+    public ByteBuffer read(Entry entry) {
+        ByteBuffer b = data.duplicate();
+        b.position((int) entry.offset);
+        b.limit((int) entry.offset + entry.length);
+        return b.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Reads an entry's source, checking it against the hash in the index.
+     *
+     * @param entry An entry from {@link #getEntries()}.
+     * @return The source text.
+     * @throws IOException if the source doesn't match its hash.
+     */
+    public String readSource(Entry entry) throws IOException {
+        ByteBuffer source = read(entry);
+        MessageDigest md = sha256();
+        md.update(source.duplicate());
+        if (!Util.toHexString(md.digest()).equals(entry.sha256)) {
+            throw new IOException("Source of '" + entry.name + "' doesn't match its hash in " + file);
+        }
+        return UTF8.decode(source).toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Builds a new archive.
+     */
+    public static final class Writer {
+        private static final class Pending {
+            final String pipelineActionClass;
+            final PipelineActionType type;
+            final Map<String,Boolean> fields;
+            final boolean usesNode;
+            final byte[] source;
+
+            Pending(String pipelineActionClass, PipelineActionType type, Map<String,Boolean> fields,
+                    boolean usesNode, byte[] source) {
+                this.pipelineActionClass = pipelineActionClass;
+                this.type = type;
+                this.fields = fields;
+                this.usesNode = usesNode;
+                this.source = source;
+            }
+        }
+
+        private final SortedMap<String,Pending> actions = new TreeMap<String,Pending>();
+
+        /**
+         * Adds an action, replacing any existing one with the same name.
+         *
+         * @param name The action name.
+         * @param pipelineActionClass The class the action's source defines.
+         * @param type The action's type.
+         * @param fields The action's fields, and whether each is required.
+         * @param usesNode Whether the action needs to run in a node context.
+         * @param source The action's Groovy source.
+         * @return This writer.
+         */
+        public Writer add(String name, String pipelineActionClass, PipelineActionType type,
+                          Map<String,Boolean> fields, boolean usesNode, String source) {
+            actions.put(name, new Pending(pipelineActionClass, type, new TreeMap<String,Boolean>(fields), usesNode,
+                    source.getBytes(UTF8)));
+            return this;
+        }
+
+        /**
+         * Writes the archive to a temporary file next to the target, then renames it into place.
+         *
+         * @param file The archive file.
+         * @throws IOException if the archive can't be written.
+         */
+        public void writeTo(File file) throws IOException {
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(index);
+            List<byte[]> sources = new ArrayList<byte[]>();
+            long offset = 0;
+
+            out.writeInt(actions.size());
+            for (Map.Entry<String,Pending> e : actions.entrySet()) {
+                Pending a = e.getValue();
+                byte[] source = a.source;
+
+                out.writeUTF(e.getKey());
+                out.writeUTF(a.pipelineActionClass);
+                out.writeUTF(a.type.getType());
+                out.writeInt(a.fields.size());
+                for (Map.Entry<String,Boolean> f : a.fields.entrySet()) {
+                    out.writeUTF(f.getKey());
+                    out.writeBoolean(f.getValue());
+                }
+                out.writeBoolean(a.usesNode);
+                out.writeLong(offset);
+                out.writeInt(source.length);
+                out.writeUTF(Util.toHexString(sha256().digest(source)));
+
+                sources.add(source);
+                offset += source.length;
+            }
+            out.flush();
+
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Could not create " + parent);
+            }
+            File tmp = File.createTempFile(file.getName(), ".tmp", parent);
+            try {
+                OutputStream os = new FileOutputStream(tmp);
+                try {
+                    DataOutputStream header = new DataOutputStream(os);
+                    header.write(MAGIC);
+                    header.writeInt(VERSION);
+                    header.writeInt(index.size());
+                    index.writeTo(header);
+                    for (byte[] source : sources) {
+                        header.write(source);
+                    }
+                    header.flush();
+                } finally {
+                    os.close();
+                }
+                if (!tmp.renameTo(file)) {
+                    // Windows won't rename over an existing file.
+                    if (!file.delete() || !tmp.renameTo(file)) {
+                        throw new IOException("Could not move " + tmp + " to " + file);
+                    }
+                }
+            } finally {
+                if (tmp.exists() && !tmp.delete()) {
+                    tmp.deleteOnExit();
+                }
+            }
+        }
+    }
+}
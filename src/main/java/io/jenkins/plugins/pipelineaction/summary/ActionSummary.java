@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.summary;
+
+import hudson.model.Action;
+
+import java.io.Serializable;
+
+/**
+ * Summary of one "runPipelineAction" invocation, attached to the start of its {@link ActionSummaryStep} block.
+ */
+public class ActionSummary implements Action, Serializable {
+    private final String action;
+    private final String argsDigest;
+    private final long startedAt;
+    private final long durationMillis;
+    private final String result;
+
+    public ActionSummary(String action, String argsDigest, long startedAt, long durationMillis, String result) {
+        this.action = action;
+        this.argsDigest = argsDigest;
+        this.startedAt = startedAt;
+        this.durationMillis = durationMillis;
+        this.result = result;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getArgsDigest() {
+        return argsDigest;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return "SUCCESS", "ABORTED", or "FAILURE: " followed by the error.
+     */
+    public String getResult() {
+        return result;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Action " + action + ": " + result;
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,530 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.summary;
+
+import com.google.inject.Inject;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.model.TaskListener;
+import io.jenkins.plugins.pipelineaction.PipelineActionType;
+import io.jenkins.plugins.pipelineaction.policy.ActionScheduler;
+import io.jenkins.plugins.pipelineaction.policy.ActionSlot;
+import io.jenkins.plugins.pipelineaction.policy.CircuitBreaker;
+import io.jenkins.plugins.pipelineaction.policy.Timeouts;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.workflow.actions.LabelAction;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.BodyExecution;
+import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
+import org.jenkinsci.plugins.workflow.steps.FlowInterruptedException;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a whole action as one labelled block, recording an {@link ActionSummary} on its start node when it finishes.
+ * Used internally by "runPipelineAction" in flow-graph-light mode - see {@link #LIGHT}.
+ *
+ * The block stands in for the steps "runPipelineAction" would otherwise wrap the action in. If the action needs a slot
+ * from the {@link ActionScheduler}, it takes it through the same {@link ActionSlot} as "pipelineActionSlot". If the
+ * action has a timeout, retry or circuit breaker policy, the block enforces it itself - timing attempts out, waiting
+ * between them and running the body again - instead of through "timeout", "sleep" and "echo" steps.
+ */
+public class ActionSummaryStep extends AbstractStepImpl {
+    private static final Logger LOGGER = Logger.getLogger(ActionSummaryStep.class.getName());
+
+    /**
+     * Whether actions run in flow-graph-light mode by default. Can be overridden with "light: true/false" in the
+     * "runPipelineAction" arguments. In light mode, an action's scheduler slot, timeout and retries are handled by a
+     * single summary block rather than by separate steps, so the only nodes added besides the steps the action itself
+     * runs are the block's. Those steps are still recorded - CPS records every step it runs - so to avoid them too,
+     * give the action a flyweight.
+     */
+    public static /* non-final for script console */ boolean LIGHT =
+            Boolean.getBoolean(ActionSummaryStep.class.getName() + ".light");
+
+    private final String action;
+    private String argsDigest = "";
+    private boolean schedule;
+    private String type = PipelineActionType.STANDARD.getType();
+    private int cost = 1;
+    private boolean usesNode = true;
+    private int timeout;
+    private int retries;
+    private int backoff;
+    private boolean circuitBreaker;
+    private boolean skipWhenOpen;
+
+    @DataBoundConstructor
+    public ActionSummaryStep(String action) {
+        this.action = action;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getArgsDigest() {
+        return argsDigest;
+    }
+
+    @DataBoundSetter
+    public void setArgsDigest(String argsDigest) {
+        this.argsDigest = argsDigest;
+    }
+
+    public boolean isSchedule() {
+        return schedule;
+    }
+
+    @DataBoundSetter
+    public void setSchedule(boolean schedule) {
+        this.schedule = schedule;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    @DataBoundSetter
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    @DataBoundSetter
+    public void setCost(int cost) {
+        this.cost = cost;
+    }
+
+    public boolean isUsesNode() {
+        return usesNode;
+    }
+
+    @DataBoundSetter
+    public void setUsesNode(boolean usesNode) {
+        this.usesNode = usesNode;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @param timeout Time limit for each attempt, in seconds. 0 for none.
+     */
+    @DataBoundSetter
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    @DataBoundSetter
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    public int getBackoff() {
+        return backoff;
+    }
+
+    /**
+     * @param backoff Seconds to wait before the first retry, doubling for each one after.
+     */
+    @DataBoundSetter
+    public void setBackoff(int backoff) {
+        this.backoff = backoff;
+    }
+
+    public boolean isCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    @DataBoundSetter
+    public void setCircuitBreaker(boolean circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public boolean isSkipWhenOpen() {
+        return skipWhenOpen;
+    }
+
+    @DataBoundSetter
+    public void setSkipWhenOpen(boolean skipWhenOpen) {
+        this.skipWhenOpen = skipWhenOpen;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "pipelineActionSummary";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Run a pipeline action as one summarized block";
+        }
+
+        @Override
+        public boolean takesImplicitBlockArgument() {
+            return true;
+        }
+    }
+
+    public static class Execution extends AbstractStepExecutionImpl {
+        @Inject(optional = true)
+        private transient ActionSummaryStep step;
+        @StepContextParameter
+        private transient FlowNode node;
+
+        private String action;
+        private String argsDigest;
+        private int timeout;
+        private int retries;
+        private int backoff;
+        private boolean circuitBreaker;
+        private boolean skipWhenOpen;
+
+        private ActionSlot slot;
+
+        /**
+         * The body's latest run, if it runs without a slot.
+         */
+        private BodyExecution body;
+
+        /**
+         * Attempts started so far. Guarded by this, as are the fields below.
+         */
+        private int attempts;
+
+        private long startedAt;
+
+        /**
+         * When the running attempt times out, or 0.
+         */
+        private long deadline;
+
+        /**
+         * When the next attempt is due, or 0 if none is waiting.
+         */
+        private long retryAt;
+
+        private transient Future<?> timer;
+
+        @Override
+        public boolean start() throws Exception {
+            action = step.getAction();
+            argsDigest = step.getArgsDigest();
+            timeout = step.getTimeout();
+            retries = step.getRetries();
+            backoff = step.getBackoff();
+            circuitBreaker = step.isCircuitBreaker();
+            skipWhenOpen = step.isSkipWhenOpen();
+            node.addAction(new LabelAction("Action: " + action));
+
+            if (step.isSchedule()) {
+                slot = new ActionSlot(getContext(), action, PipelineActionType.fromString(step.getType()),
+                        step.getCost(), step.isUsesNode(), new Summarize(this));
+            }
+            attempt();
+            return false;
+        }
+
+        /**
+         * Runs the body, or runs it again - unless the action's circuit is open.
+         */
+        private void attempt() throws IOException, InterruptedException {
+            if (circuitBreaker && !CircuitBreaker.get().allowRequest(action)) {
+                if (skipWhenOpen) {
+                    println("Skipping action '" + action + "' - it has failed repeatedly across builds.");
+                    finish("SKIPPED");
+                    getContext().onSuccess(null);
+                } else {
+                    AbortException e = new AbortException("Action '" + action
+                            + "' has failed repeatedly across builds - failing fast.");
+                    finish("FAILURE: " + e);
+                    getContext().onFailure(e);
+                }
+                return;
+            }
+
+            if (slot != null) {
+                boolean first;
+                synchronized (this) {
+                    first = attempts == 0;
+                }
+                if (first ? slot.start() : slot.restart()) {
+                    println("Waiting for a slot to run action '" + action + "'");
+                }
+            } else {
+                BodyExecution b = getContext().newBodyInvoker().withCallback(new Summarize(this)).start();
+                synchronized (this) {
+                    body = b;
+                }
+            }
+        }
+
+        synchronized void attemptStarted() {
+            attempts++;
+            long now = System.currentTimeMillis();
+            if (attempts == 1) {
+                // Don't count time spent waiting for a slot.
+                startedAt = now;
+            }
+            if (timeout > 0) {
+                deadline = now + TimeUnit.SECONDS.toMillis(timeout);
+                scheduleTimeout();
+            }
+        }
+
+        void succeeded(Object result) {
+            endAttempt();
+            if (circuitBreaker) {
+                CircuitBreaker.get().recordSuccess(action);
+            }
+            finish("SUCCESS");
+            getContext().onSuccess(result);
+        }
+
+        void failed(Throwable t) {
+            endAttempt();
+            // Don't retry, or count against the action, if someone aborted the build.
+            boolean aborted = t instanceof FlowInterruptedException && !Timeouts.isTimeout((FlowInterruptedException) t);
+            if (circuitBreaker) {
+                if (aborted) {
+                    CircuitBreaker.get().recordAbort(action);
+                } else {
+                    CircuitBreaker.get().recordFailure(action);
+                }
+            }
+
+            int attempt;
+            synchronized (this) {
+                attempt = attempts;
+            }
+            if (!aborted && attempt <= retries) {
+                long delay = (long) backoff << (attempt - 1);
+                println("Action '" + action + "' failed (" + t + "), retrying in " + delay + "s (attempt " + attempt
+                        + " of " + (retries + 1) + ")");
+                synchronized (this) {
+                    retryAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(delay);
+                    scheduleRetry();
+                }
+                return;
+            }
+
+            finish(t instanceof FlowInterruptedException ? "ABORTED" : "FAILURE: " + t);
+            getContext().onFailure(t);
+        }
+
+        private synchronized void endAttempt() {
+            deadline = 0;
+            if (timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+        }
+
+        private void scheduleTimeout() {
+            assert Thread.holdsLock(this);
+            final int attempt = attempts;
+            timer = Timer.get().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    timedOut(attempt);
+                }
+            }, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+
+        private void timedOut(int attempt) {
+            synchronized (this) {
+                if (attempt != attempts || deadline == 0) {
+                    return;
+                }
+                deadline = 0;
+            }
+            println("Action '" + action + "' timed out after " + timeout + "s");
+            FlowInterruptedException cause = Timeouts.exceeded(timeout);
+            BodyExecution b;
+            synchronized (this) {
+                b = body;
+            }
+            if (slot != null) {
+                slot.interrupt(cause);
+            } else if (b != null) {
+                b.cancel(cause);
+            }
+        }
+
+        private void scheduleRetry() {
+            assert Thread.holdsLock(this);
+            timer = Timer.get().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    retry();
+                }
+            }, Math.max(0, retryAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+
+        private void retry() {
+            synchronized (this) {
+                if (retryAt == 0) {
+                    // Stopped while waiting.
+                    return;
+                }
+                retryAt = 0;
+                timer = null;
+            }
+            try {
+                attempt();
+            } catch (Exception e) {
+                getContext().onFailure(e);
+            } catch (Error e) {
+                getContext().onFailure(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public void stop(Throwable cause) throws Exception {
+            boolean waitingToRetry;
+            BodyExecution b;
+            synchronized (this) {
+                waitingToRetry = retryAt != 0;
+                retryAt = 0;
+                b = body;
+            }
+            endAttempt();
+
+            if (waitingToRetry) {
+                // Nothing's running - just don't start the next attempt.
+                finish("ABORTED");
+                getContext().onFailure(cause);
+            } else if (slot != null) {
+                slot.stop(cause);
+            } else if (b != null) {
+                b.cancel(cause);
+            } else {
+                getContext().onFailure(cause);
+            }
+        }
+
+        @Override
+        public void onResume() {
+            super.onResume();
+            if (slot != null) {
+                slot.onResume();
+            }
+            synchronized (this) {
+                if (retryAt != 0) {
+                    scheduleRetry();
+                } else if (deadline != 0) {
+                    scheduleTimeout();
+                }
+            }
+        }
+
+        private void println(String message) {
+            try {
+                TaskListener listener = getContext().get(TaskListener.class);
+                if (listener != null) {
+                    listener.getLogger().println(message);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not log for action " + action, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void finish(String result) {
+            long started;
+            synchronized (this) {
+                started = attempts > 0 ? startedAt : System.currentTimeMillis();
+            }
+            try {
+                FlowNode start = getContext().get(FlowNode.class);
+                if (start != null) {
+                    start.addAction(new ActionSummary(action, argsDigest, started,
+                            System.currentTimeMillis() - started, result));
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not record summary of action " + action, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Hands each run of the body back to the {@link Execution}, which decides whether to run it again.
+     */
+    private static final class Summarize extends BodyExecutionCallback {
+        private final Execution execution;
+
+        Summarize(Execution execution) {
+            this.execution = execution;
+        }
+
+        @Override
+        public void onStart(StepContext context) {
+            execution.attemptStarted();
+        }
+
+        @Override
+        public void onSuccess(StepContext context, Object result) {
+            execution.succeeded(result);
+        }
+
+        @Override
+        public void onFailure(StepContext context, Throwable t) {
+            execution.failed(t);
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+}
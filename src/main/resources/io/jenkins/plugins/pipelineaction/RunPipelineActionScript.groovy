@@ -24,7 +24,15 @@
 package io.jenkins.plugins.pipelineaction
 
 import com.cloudbees.groovy.cps.NonCPS
+import io.jenkins.plugins.pipelineaction.cache.ActionCache
+import io.jenkins.plugins.pipelineaction.notifications.NotificationCoalescer
+import io.jenkins.plugins.pipelineaction.notifications.NotificationDispatcher
+import io.jenkins.plugins.pipelineaction.policy.ActionScheduler
+import io.jenkins.plugins.pipelineaction.policy.CircuitBreaker
+import io.jenkins.plugins.pipelineaction.policy.Timeouts
+import io.jenkins.plugins.pipelineaction.summary.ActionSummaryStep
 import org.jenkinsci.plugins.workflow.cps.CpsScript
+import org.jenkinsci.plugins.workflow.steps.FlowInterruptedException
 
 // TODO: May want to move this to an actual class extending Step to avoid some weirdness.
 class RunPipelineActionScript implements Serializable {
@@ -49,11 +57,377 @@ class RunPipelineActionScript implements Serializable {
             name = "script"
         }
 
-        return getPipelineAction(name, type)?.call(args)
+        // Notifiers with a controller-side sender can be coalesced into digests, or sent in the background, rather
+        // than sent from the Pipeline right away.
+        if (type == PipelineActionType.NOTIFIER) {
+            if (args?.coalesce && coalesceNotification(name, args)) {
+                return null
+            }
+            if (args?.async && dispatchNotification(name, args)) {
+                return null
+            }
+        }
+
+        def plan = planInvocation(name, type, args)
+
+        // No-node actions with a controller-side implementation skip the script entirely.
+        if (plan.flyweight != null) {
+            return script.pipelineActionFlyweight(action: name, args: plan.flyweight)
+        }
+
+        actionStarted(name)
+        try {
+            // Node-using actions called outside a node wait for their slot first, and only then take an executor.
+            boolean needsNode = plan.slot != null && plan.slot.usesNode && script.env.NODE_NAME == null
+
+            // In flow-graph-light mode, one summary block stands in for the slot, timeout and retry steps - it runs
+            // each attempt at the action itself.
+            if (plan.summary != null) {
+                return script.pipelineActionSummary(plan.summary) {
+                    if (needsNode) {
+                        return script.node {
+                            invoke(name, plan, args)
+                        }
+                    }
+                    return invoke(name, plan, args)
+                }
+            }
+
+            // Actions take a slot from the scheduler, if it's capping them.
+            if (plan.slot != null) {
+                return script.pipelineActionSlot(plan.slot) {
+                    executeOnNode(name, plan, args, needsNode)
+                }
+            }
+
+            return execute(name, plan, args)
+        } finally {
+            actionFinished(name)
+        }
+    }
+
+    /**
+     * Runs the action, in a node of its own if it needs one - called once it has its scheduler slot, so that waiting
+     * for the slot never holds an executor.
+     */
+    def executeOnNode(String name, Map plan, Map args, boolean needsNode) {
+        if (needsNode) {
+            return script.node {
+                execute(name, plan, args)
+            }
+        }
+
+        return execute(name, plan, args)
+    }
+
+    /**
+     * Runs the action, with its policy if it has one.
+     */
+    def execute(String name, Map plan, Map args) {
+        if (plan.policy != null) {
+            return invokeWithPolicy(name, plan, args)
+        }
+
+        return invoke(name, plan, args)
+    }
+
+    /**
+     * Runs the action, with its timeout, retries and circuit breaker.
+     */
+    def invokeWithPolicy(String name, Map plan, Map args) {
+        Map policy = plan.policy
+        int attempt = 0
+        while (true) {
+            if (policy.circuitBreaker && !circuitAllows(name)) {
+                if (policy.skipWhenOpen) {
+                    script.echo "Skipping action '${name}' - it has failed repeatedly across builds."
+                    return null
+                }
+                script.error("Action '${name}' has failed repeatedly across builds - failing fast.")
+            }
+
+            attempt++
+            try {
+                def result
+                if (policy.timeout > 0) {
+                    result = script.timeout(time: policy.timeout, unit: 'SECONDS') {
+                        invoke(name, plan, args)
+                    }
+                } else {
+                    result = invoke(name, plan, args)
+                }
+                if (policy.circuitBreaker) {
+                    circuitSucceeded(name)
+                }
+                return result
+            } catch (Exception e) {
+                // Don't retry, or count against the action, if someone aborted the build.
+                if (e instanceof FlowInterruptedException && !timedOut(e)) {
+                    if (policy.circuitBreaker) {
+                        circuitAborted(name)
+                    }
+                    throw e
+                }
+                if (policy.circuitBreaker) {
+                    circuitFailed(name)
+                }
+                if (attempt > policy.retries) {
+                    throw e
+                }
+
+                long backoff = policy.backoff * (1L << (attempt - 1))
+                script.echo "Action '${name}' failed (${e}), retrying in ${backoff}s (attempt ${attempt} of ${policy.retries + 1})"
+                script.sleep(time: backoff, unit: 'SECONDS')
+            }
+        }
+    }
+
+    /**
+     * Runs the action itself, skipping it if its outputs are cached.
+     */
+    def invoke(String name, Map plan, Map args) {
+        // Cacheable actions are skipped entirely if their outputs for these arguments and inputs are already stored.
+        def cache = plan.cache
+        if (cache != null) {
+            if (cache.warning != null) {
+                script.echo "WARNING: ${cache.warning}"
+            }
+            def lookup = script.pipelineActionCacheLookup(action: name, argsDigest: cache.argsDigest,
+                                                          inputs: cache.inputs)
+            if (lookup.hit) {
+                return null
+            }
+            def result = plan.actionScript?.call(args)
+            script.pipelineActionCacheSave(key: lookup.key, outputs: cache.outputs)
+            return result
+        }
+
+        return plan.actionScript?.call(args)
+    }
+
+    /**
+     * Looks the action up once for this invocation, and works out everything the rest of the call needs from it - the
+     * {@link PipelineAction} itself isn't serializable, so only what's derived from it is kept across steps.
+     *
+     * @return Either just the "flyweight" arguments, or the "summary", "slot", "policy" and "cache" specs, any of which
+     *         may be null, and the "actionScript" to run - null if there's no such action.
+     */
+    @NonCPS
+    def planInvocation(String name, PipelineActionType type, Map args) {
+        def action = PipelineAction.getPipelineAction(name, type)
+
+        def flyweight = flyweightArgs(action, name, args)
+        if (flyweight != null) {
+            return [flyweight: flyweight]
+        }
+
+        def slot = slotSpec(action, name)
+        def policy = policySpec(action, args)
+        return [summary: summarySpec(name, args, slot, policy),
+                slot: slot,
+                policy: policy,
+                cache: cacheSpec(action, name, args),
+                actionScript: action?.getScript(script)]
+    }
+
+    /**
+     * Works out the timeout, retry and circuit breaker policy for this invocation, from the action's defaults and the
+     * "policy" argument - e.g., "policy: [timeout: 300, retries: 2, backoff: 10, circuitBreaker: true]". With
+     * "skipWhenOpen: true", the action is skipped rather than failed while its circuit is open.
+     *
+     * Retries back off with a "sleep" where the action was called, so inside a node block the executor is held while
+     * waiting - an action can't leave its caller's node. In flow-graph-light mode, the summary block waits instead, but
+     * that still holds the caller's node.
+     *
+     * @return The policy, or null if there's nothing to enforce.
+     */
+    @NonCPS
+    def policySpec(PipelineAction action, Map args) {
+        if (action == null) {
+            return null
+        }
+
+        Map overrides = args?.policy instanceof Map ? args.policy : [:]
+        // An explicit 0 turns the action's default off.
+        def policy = [timeout: (overrides.containsKey('timeout') ? overrides.timeout
+                                                                 : action.getTimeoutSeconds()) as int,
+                      retries: (overrides.containsKey('retries') ? overrides.retries : action.getRetries()) as int,
+                      backoff: (overrides.containsKey('backoff') ? overrides.backoff
+                                                                 : action.getRetryBackoffSeconds()) as int,
+                      circuitBreaker: overrides.containsKey('circuitBreaker') ? overrides.circuitBreaker as boolean
+                                                                              : action.usesCircuitBreaker(),
+                      skipWhenOpen: overrides.skipWhenOpen as boolean]
+
+        if (policy.timeout <= 0 && policy.retries <= 0 && !policy.circuitBreaker) {
+            return null
+        }
+        return policy
+    }
+
+    /**
+     * Works out whether this invocation can take the flyweight path - the action doesn't use a node, has a
+     * flyweight, and isn't being cached or run with a policy, whether declared or passed - and checks its required fields up front.
+     *
+     * @return The arguments for the flyweight, or null if the action should run normally.
+     */
+    @NonCPS
+    def flyweightArgs(PipelineAction action, String name, Map args) {
+        if (args?.containsKey('cache') || args?.containsKey('policy')) {
+            return null
+        }
+        if (action == null || action.usesNode() || action.getFlyweight() == null) {
+            return null
+        }
+        // Declared caching or policy needs the steps the normal path wraps the action in.
+        if (action.isCacheable() || action.getTimeoutSeconds() > 0 || action.getRetries() > 0
+                || action.usesCircuitBreaker()) {
+            return null
+        }
+
+        // Same as missingRequiredArgs - a null value counts as missing.
+        def missing = action.getFields().findAll { k, v -> v && args?.get(k) == null }.keySet()
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("Missing required field(s) for '${name}' action: ${missing.join(', ')}")
+        }
+        return new HashMap(args ?: [:])
+    }
+
+    /**
+     * Works out the arguments for "pipelineActionSummary", if this invocation runs in flow-graph-light mode - either
+     * by default, or with "light: true". Any scheduler slot the action needs is taken by the same block, and any
+     * policy is enforced by it.
+     *
+     * @param slot The action's slot arguments - see {@link #slotSpec}.
+     * @param policy The action's policy - see {@link #policySpec}.
+     * @return The summary arguments, or null if the action should run without a summary block.
+     */
+    @NonCPS
+    def summarySpec(String name, Map args, Map slot, Map policy) {
+        boolean light = args?.containsKey('light') ? args.light as boolean : ActionSummaryStep.LIGHT
+        if (!light) {
+            return null
+        }
+
+        def summary = [action: name, argsDigest: ActionCache.digestArgs(name, args)]
+        if (slot != null) {
+            summary.schedule = true
+            summary.type = slot.type
+            summary.cost = slot.cost
+            summary.usesNode = slot.usesNode
+        }
+        if (policy != null) {
+            summary.putAll(policy)
+        }
+        return summary
+    }
+
+    /**
+     * Works out the arguments for "pipelineActionSlot", if scheduling caps are configured. Whether the action actually
+     * waits for a slot depends on where it's called - see {@link io.jenkins.plugins.pipelineaction.policy.ActionSlot}.
+     * Node-using actions called outside a node are given one once they have their slot.
+     *
+     * @return The slot arguments, or null if the action can run straight away.
+     */
+    @NonCPS
+    def slotSpec(PipelineAction action, String name) {
+        if (!ActionScheduler.get().isEnabled()) {
+            return null
+        }
+        if (action == null) {
+            return null
+        }
+        return [action: name, type: action.pipelineActionType().getType(), cost: action.getCost(),
+                usesNode: action.usesNode() as boolean]
+    }
+
+    @NonCPS
+    def timedOut(FlowInterruptedException e) {
+        return Timeouts.isTimeout(e)
+    }
+
+    @NonCPS
+    def circuitAllows(String name) {
+        return CircuitBreaker.get().allowRequest(name)
+    }
+
+    @NonCPS
+    def circuitSucceeded(String name) {
+        CircuitBreaker.get().recordSuccess(name)
+    }
+
+    @NonCPS
+    def circuitFailed(String name) {
+        CircuitBreaker.get().recordFailure(name)
+    }
+
+    @NonCPS
+    def circuitAborted(String name) {
+        CircuitBreaker.get().recordAbort(name)
+    }
+
+    /**
+     * Works out whether this invocation should be cached, and if so with what inputs and outputs. The "cache"
+     * argument can be used to turn caching off ("cache: false"), or to turn it on for actions that don't declare
+     * themselves cacheable, such as global library actions ("cache: [inputs: 'src/**', outputs: 'out/**']").
+     *
+     * Entries are only visible to the job that stored them, unless a shared namespace is given - e.g.,
+     * "cache: [shared: 'toolchain']" - in which case jobs in the same folder using the same namespace can reuse them.
+     * Shared namespaces have to be allowed by {@link ActionCache#SHARED_NAMESPACES} - any other is cached for the job
+     * only, with a warning.
+     */
+    @NonCPS
+    def cacheSpec(PipelineAction action, String name, Map args) {
+        if (args == null || args.cache == false) {
+            return null
+        }
+        if (action == null) {
+            return null
+        }
+
+        def inputs = action.getCacheInputs()
+        def outputs = action.getCacheOutputs()
+        if (args.cache instanceof Map) {
+            inputs = args.cache.inputs ?: inputs
+            outputs = args.cache.outputs ?: outputs
+        } else if (!action.isCacheable()) {
+            return null
+        }
+
+        def job = PipelineActionContext.currentRun().getParent()
+        def namespace = ActionCache.jobNamespace(job)
+        def warning = null
+        if (args.cache instanceof Map && args.cache.shared) {
+            def shared = ActionCache.sharedNamespace(job, args.cache.shared as String)
+            if (shared != null) {
+                namespace = shared
+            } else {
+                warning = "Shared cache namespace '${args.cache.shared}' isn't allowed - caching '${name}' for this job only".toString()
+            }
+        }
+
+        return [argsDigest: ActionCache.digestInvocation(action, namespace, outputs, args),
+                inputs: inputs,
+                outputs: outputs,
+                warning: warning]
+    }
+
+    @NonCPS
+    def coalesceNotification(String name, Map args) {
+        return NotificationCoalescer.get().offer(name, args)
+    }
+
+    @NonCPS
+    def dispatchNotification(String name, Map args) {
+        return NotificationDispatcher.get().dispatch(name, args)
+    }
+
+    @NonCPS
+    def actionStarted(String name) {
+        RunningPipelineActionsAction.started(name)
     }
 
     @NonCPS
-    def getPipelineAction(String name, PipelineActionType type) {
-        return PipelineAction.getPipelineAction(name, type)?.getScript(script)
+    def actionFinished(String name) {
+        RunningPipelineActionsAction.finished(name)
     }
 }
\ No newline at end of file
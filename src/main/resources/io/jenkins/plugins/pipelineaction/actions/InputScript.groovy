@@ -23,23 +23,107 @@
  */
 package io.jenkins.plugins.pipelineaction.actions
 
+import com.cloudbees.groovy.cps.NonCPS
 import io.jenkins.plugins.pipelineaction.PipelineAction
+import io.jenkins.plugins.pipelineaction.policy.Timeouts
 import org.jenkinsci.plugins.workflow.cps.CpsScript
+import org.jenkinsci.plugins.workflow.steps.FlowInterruptedException
 
 
 class InputScript extends AbstractPipelineActionScript {
 
+    /**
+     * Fields handled by the action itself rather than passed on to the "input" step.
+     */
+    static final List<String> OWN_FIELDS = ['timeout', 'timeoutUnit', 'defaultOutcome', 'holdExecutor']
+
     public InputScript(CpsScript script, PipelineAction actionDefinition = null) {
         super(script, actionDefinition)
     }
 
+    /**
+     * Runs the "input" step. If "timeout" is given (or {@link PendingInputMonitor#DEFAULT_TIMEOUT_MINUTES} is set),
+     * the input is resolved automatically once it elapses - "defaultOutcome" is returned if specified, otherwise the
+     * build is aborted as with the "timeout" step.
+     *
+     * An action can't leave the node block it's called from, so waiting inside one holds the executor for the whole
+     * wait. Call it between node blocks instead:
+     *
+     * <pre>
+     * node { ... }
+     * def answer = runPipelineAction([name: 'input', message: 'Deploy?', timeout: 30, defaultOutcome: false])
+     * node { ... }
+     * </pre>
+     *
+     * A call with an explicit "timeout" inside a node is refused, since timed approval waits are the ones meant to be
+     * long - pass "holdExecutor: true" to wait there anyway. Other calls inside a node only get a warning.
+     */
     def call(Map<String,Object> args) {
         def missingArgs = missingRequiredArgs(args)
         if (missingArgs.isEmpty()) {
-            script.input(copySpecifiedArgs(args))
+            def inputArgs = inputStepArgs(args)
+
+            if (script.env.NODE_NAME != null && !args.holdExecutor) {
+                if (args.timeout) {
+                    script.error("'input' action with a timeout called inside a node block, which would hold the executor while waiting. Call it between node blocks, or pass holdExecutor: true.")
+                }
+                script.echo "WARNING: 'input' action called inside a node block - the executor will be held while waiting. Call it outside of node to free the executor."
+            }
+
+            def timeout = args.timeout
+            def timeoutUnit = args.timeoutUnit ?: 'MINUTES'
+            if (!timeout && PendingInputMonitor.DEFAULT_TIMEOUT_MINUTES > 0) {
+                timeout = PendingInputMonitor.DEFAULT_TIMEOUT_MINUTES
+                timeoutUnit = 'MINUTES'
+            }
+
+            def waitKey = inputStarted(args.message)
+            try {
+                if (timeout) {
+                    try {
+                        return script.timeout(time: timeout as int, unit: timeoutUnit) {
+                            script.input(inputArgs)
+                        }
+                    } catch (FlowInterruptedException e) {
+                        if (args.containsKey('defaultOutcome') && timedOut(e)) {
+                            script.echo "No response to input '${args.message}' within ${timeout} ${timeoutUnit.toLowerCase()} - continuing with the default outcome."
+                            return args.defaultOutcome
+                        }
+                        throw e
+                    }
+                } else {
+                    return script.input(inputArgs)
+                }
+            } finally {
+                inputFinished(waitKey)
+            }
         } else {
             script.error("Missing required field(s) for 'input' action: " + missingArgs.join(', '))
         }
 
     }
-}
\ No newline at end of file
+
+    @NonCPS
+    def inputStepArgs(Map<String,Object> args) {
+        return copySpecifiedArgs(args).findAll { !(it.key in OWN_FIELDS) }
+    }
+
+    /**
+     * True if the input was interrupted by the timeout elapsing, rather than by someone rejecting it or aborting the
+     * build.
+     */
+    @NonCPS
+    def timedOut(FlowInterruptedException e) {
+        return Timeouts.isTimeout(e)
+    }
+
+    @NonCPS
+    def inputStarted(String message) {
+        return PendingInputMonitor.get().started(message)
+    }
+
+    @NonCPS
+    def inputFinished(String key) {
+        PendingInputMonitor.get().finished(key)
+    }
+}
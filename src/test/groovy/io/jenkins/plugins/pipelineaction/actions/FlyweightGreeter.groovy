@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.actions
+
+import hudson.Extension
+import hudson.model.Run
+import hudson.model.TaskListener
+import io.jenkins.plugins.pipelineaction.PipelineAction
+import io.jenkins.plugins.pipelineaction.flyweight.FlyweightAction
+
+
+@Extension
+public class FlyweightGreeter extends PipelineAction {
+    @Override
+    public String getName() {
+        return "flyweightGreeter"
+    }
+
+    @Override
+    public Map<String, Boolean> getFields() {
+        return [
+            who: true,
+        ]
+    }
+
+    @Override
+    public String getPipelineActionClass() {
+        return "FlyweightGreeterScript"
+    }
+
+    @Override
+    public Boolean usesNode() {
+        return false
+    }
+
+    @Override
+    public FlyweightAction getFlyweight() {
+        return new FlyweightAction() {
+            @Override
+            Object run(Map<String, Object> args, Run<?, ?> run, TaskListener listener) throws Exception {
+                listener.getLogger().println("Hello, ${args.who}".toString())
+                return "greeted ${args.who}".toString()
+            }
+        }
+    }
+}
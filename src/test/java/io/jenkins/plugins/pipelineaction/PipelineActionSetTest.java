@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PipelineActionSetTest {
+    private int origInterval;
+
+    @Before
+    public void setUp() {
+        origInterval = PipelineActionSet.REFRESH_INTERVAL_MILLIS;
+    }
+
+    @After
+    public void tearDown() {
+        PipelineActionSet.REFRESH_INTERVAL_MILLIS = origInterval;
+    }
+
+    private static class CountingSet extends PipelineActionSet {
+        final AtomicInteger rebuilds = new AtomicInteger();
+        final CountDownLatch rebuilding = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void rebuild() {
+            if (rebuilds.incrementAndGet() == 1) {
+                return;
+            }
+            rebuilding.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public Iterator<PipelineAction> iterator() {
+            return Collections.<PipelineAction>emptyList().iterator();
+        }
+    }
+
+    @Test
+    public void checksAreThrottled() {
+        PipelineActionSet.REFRESH_INTERVAL_MILLIS = 60000;
+        CountingSet set = new CountingSet();
+
+        set.maybeRefresh();
+        set.maybeRefresh();
+        set.maybeRefresh();
+        assertEquals(1, set.rebuilds.get());
+    }
+
+    @Test
+    public void readersDontWaitForRefresh() throws Exception {
+        PipelineActionSet.REFRESH_INTERVAL_MILLIS = 0;
+        CountingSet set = new CountingSet();
+        set.maybeRefresh();
+
+        // Starts a background refresh, which blocks until released.
+        set.maybeRefresh();
+        assertTrue(set.rebuilding.await(10, TimeUnit.SECONDS));
+
+        // Returns straight away rather than starting another refresh or waiting.
+        set.maybeRefresh();
+        assertEquals(2, set.rebuilds.get());
+
+        set.release.countDown();
+    }
+}
@@ -35,6 +35,8 @@ import org.junit.runners.model.Statement;
 import org.jvnet.hudson.test.BuildWatcher;
 import org.jvnet.hudson.test.RestartableJenkinsRule;
 
+import static org.junit.Assert.assertNull;
+
 public class RunPipelineActionTest {
     @ClassRule
     public static BuildWatcher buildWatcher = new BuildWatcher();
@@ -62,6 +64,7 @@ public class RunPipelineActionTest {
                 story.j.assertLogContains("echoing pants == trousers",
                         story.j.assertBuildStatusSuccess(story.j.waitForCompletion(b)));
                 story.j.assertLogContains("echoing shirts == polos", b);
+                assertNull(b.getAction(RunningPipelineActionsAction.class));
 
             }
         });
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jenkins.plugins.pipelineaction.actions;
+
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.User;
+import hudson.model.queue.QueueTaskFuture;
+package io.jenkins.plugins.pipelineaction.actions;
+
+import io.jenkins.plugins.pipelineaction.PipelineAction;
+import io.jenkins.plugins.pipelineaction.PipelineActionType;
+import org.apache.commons.io.FileUtils;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runners.model.Statement;
+import org.jvnet.hudson.test.RestartableJenkinsRule;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
+
+import static org.junit.Assert.assertEquals;
+
+public class AbstractPipelineActionScriptTest {
+    @Rule
+    public RestartableJenkinsRule story = new RestartableJenkinsRule();
+
+    @Test
+    public void resumedBuildRehydratesAction() {
+        story.addStep(new Statement() {
+            @Override public void evaluate() throws Throwable {
+                WorkflowJob p = story.j.jenkins.createProject(WorkflowJob.class, "p");
+                p.setDefinition(new CpsFlowDefinition("runPipelineAction([name: 'semaphoreWaiter'])"));
+                WorkflowRun b = p.scheduleBuild2(0).waitForStart();
+                SemaphoreStep.waitForStart("block/1", b);
+            }
+        });
+        story.addStep(new Statement() {
+            @Override public void evaluate() throws Throwable {
+                WorkflowRun b = story.j.jenkins.getItemByFullName("p", WorkflowJob.class).getBuildByNumber(1);
+                SemaphoreStep.success("block/1", null);
+                story.j.assertLogContains("missing after wait: []",
+                        story.j.assertBuildStatusSuccess(story.j.waitForCompletion(b)));
+            }
+        });
+    }
+
+    @Test
+    public void oldFormatReadAfterUpgrade() {
+        story.addStep(new Statement() {
+            @Override public void evaluate() throws Throwable {
+                FileUtils.writeByteArrayToFile(oldFormatFile(), oldFormat("catFile"));
+            }
+        });
+        story.addStep(new Statement() {
+            @Override public void evaluate() throws Throwable {
+                ObjectInputStream in = new ObjectInputStream(
+                        new ByteArrayInputStream(FileUtils.readFileToByteArray(oldFormatFile())));
+                OldFormatScript s = (OldFormatScript) in.readObject();
+                in.close();
+
+                assertEquals("catFile", s.getActionStepName());
+                PipelineAction catFile = PipelineAction.getPipelineAction("catFile", PipelineActionType.ANY);
+                assertEquals(catFile.getFields(), s.getActionFields());
+                assertEquals(catFile.pipelineActionType(), s.getActionType());
+            }
+        });
+    }
+
+    private File oldFormatFile() {
+        return new File(story.j.jenkins.getRootDir(), "old-format-script.ser");
+    }
+
+    /**
+     * Writes a script as serialized before its metadata was looked up from the registry - every field written as
+     * a plain field, and no custom data. Only the action name is set, as for a script created from a registered action.
+     */
+    private static byte[] oldFormat(String actionStepName) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(ObjectStreamConstants.STREAM_MAGIC);
+        out.writeShort(ObjectStreamConstants.STREAM_VERSION);
+        out.writeByte(ObjectStreamConstants.TC_OBJECT);
+
+        out.writeByte(ObjectStreamConstants.TC_CLASSDESC);
+        out.writeUTF(OldFormatScript.class.getName());
+        out.writeLong(ObjectStreamClass.lookup(OldFormatScript.class).getSerialVersionUID());
+        out.writeByte(ObjectStreamConstants.SC_SERIALIZABLE);
+        out.writeShort(0);
+        out.writeByte(ObjectStreamConstants.TC_ENDBLOCKDATA);
+
+        String[][] fields = {
+                {"actionFields", "Ljava/util/Map;"},
+                {"actionStepName", "Ljava/lang/String;"},
+                {"actionType", "Lio/jenkins/plugins/pipelineaction/PipelineActionType;"},
+                {"actionUsesNode", "Ljava/lang/Boolean;"},
+                {"script", "Lorg/jenkinsci/plugins/workflow/cps/CpsScript;"},
+        };
+        out.writeByte(ObjectStreamConstants.TC_CLASSDESC);
+        out.writeUTF(AbstractPipelineActionScript.class.getName());
+        out.writeLong(ObjectStreamClass.lookup(AbstractPipelineActionScript.class).getSerialVersionUID());
+        out.writeByte(ObjectStreamConstants.SC_SERIALIZABLE);
+        out.writeShort(fields.length);
+        for (String[] f : fields) {
+            out.writeByte('L');
+            out.writeUTF(f[0]);
+            out.writeByte(ObjectStreamConstants.TC_STRING);
+            out.writeUTF(f[1]);
+        }
+        out.writeByte(ObjectStreamConstants.TC_ENDBLOCKDATA);
+        out.writeByte(ObjectStreamConstants.TC_NULL);
+
+        // Field values, in the order above - metadata is null, as if it had never been set.
+        out.writeByte(ObjectStreamConstants.TC_NULL);
+        out.writeByte(ObjectStreamConstants.TC_STRING);
+        out.writeUTF(actionStepName);
+        out.writeByte(ObjectStreamConstants.TC_NULL);
+        out.writeByte(ObjectStreamConstants.TC_NULL);
+        out.writeByte(ObjectStreamConstants.TC_NULL);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    public static class OldFormatScript extends AbstractPipelineActionScript {
+        public OldFormatScript() {
+            super(null, null);
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+}
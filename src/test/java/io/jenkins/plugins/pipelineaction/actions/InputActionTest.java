@@ -18,6 +18,7 @@ package io.jenkins.plugins.pipelineaction.actions;
 
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import hudson.model.Job;
+import hudson.model.Result;
 import hudson.model.User;
 import hudson.model.queue.QueueTaskFuture;
 import hudson.security.ACL;
@@ -29,6 +30,7 @@ import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.support.steps.input.InputAction;
 import org.jenkinsci.plugins.workflow.support.steps.input.InputStepExecution;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
@@ -77,6 +79,75 @@ public class InputActionTest {
         runAndAbort(webClient, foo, "charlie", true); // charlie should work coz he has Job.CANCEL privs
     }
 
+    @Test
+    public void testTimeoutWithDefaultOutcome() throws Exception {
+        WorkflowJob foo = j.jenkins.createProject(WorkflowJob.class, "foo");
+        foo.setDefinition(new CpsFlowDefinition("def r = runPipelineAction([name: 'input', message: 'OK?',\n"
+                + "timeout: 1, timeoutUnit: 'SECONDS', defaultOutcome: 'auto'])\n"
+                + "echo \"outcome == ${r}\""));
+
+        WorkflowRun b = j.assertBuildStatusSuccess(foo.scheduleBuild2(0));
+        j.assertLogContains("continuing with the default outcome", b);
+        j.assertLogContains("outcome == auto", b);
+        assertEquals(0, PendingInputMonitor.get().getWaitingCount());
+    }
+
+    @Test
+    public void pendingInputCounted() throws Exception {
+        WorkflowJob foo = j.jenkins.createProject(WorkflowJob.class, "foo");
+        foo.setDefinition(new CpsFlowDefinition("runPipelineAction([name: 'input', id: 'InputX', message: 'OK?'])"));
+
+        QueueTaskFuture<WorkflowRun> queueTaskFuture = foo.scheduleBuild2(0);
+        WorkflowRun run = queueTaskFuture.getStartCondition().get();
+        CpsFlowExecution execution = (CpsFlowExecution) run.getExecutionPromise().get();
+        while (run.getAction(InputAction.class) == null) {
+            execution.waitForSuspension();
+        }
+
+        PendingInputMonitor monitor = PendingInputMonitor.get();
+        assertEquals(1, monitor.getWaitingCount());
+        assertTrue(monitor.getWaitingBuilds().containsKey(run.getExternalizableId()));
+
+        run.getAction(InputAction.class).getExecution("InputX").doProceedEmpty();
+        j.assertBuildStatusSuccess(queueTaskFuture);
+        assertEquals(0, monitor.getWaitingCount());
+    }
+
+    @Test
+    public void waitsForFinishedBuildsPruned() throws Exception {
+        WorkflowJob foo = j.jenkins.createProject(WorkflowJob.class, "foo");
+        foo.setDefinition(new CpsFlowDefinition("semaphore 'wait'"));
+        WorkflowRun b = foo.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("wait/1", b);
+
+        // As if the build had been killed while waiting, without the action cleaning up after itself.
+        PendingInputMonitor.get().started(b, "OK?");
+        assertEquals(1, PendingInputMonitor.get().getWaitingCount());
+
+        SemaphoreStep.success("wait/1", null);
+        j.assertBuildStatusSuccess(j.waitForCompletion(b));
+        assertEquals(0, PendingInputMonitor.get().getWaitingCount());
+    }
+
+    @Test
+    public void timedInputRefusedInsideNode() throws Exception {
+        WorkflowJob foo = j.jenkins.createProject(WorkflowJob.class, "foo");
+        foo.setDefinition(new CpsFlowDefinition("node {\n"
+                + "  runPipelineAction([name: 'input', message: 'OK?', timeout: 1, timeoutUnit: 'SECONDS',\n"
+                + "                     defaultOutcome: 'auto'])\n"
+                + "}"));
+        WorkflowRun b = j.assertBuildStatus(Result.FAILURE, foo.scheduleBuild2(0).get());
+        j.assertLogContains("Call it between node blocks, or pass holdExecutor: true", b);
+        assertEquals(0, PendingInputMonitor.get().getWaitingCount());
+
+        foo.setDefinition(new CpsFlowDefinition("node {\n"
+                + "  def r = runPipelineAction([name: 'input', message: 'OK?', timeout: 1, timeoutUnit: 'SECONDS',\n"
+                + "                             defaultOutcome: 'auto', holdExecutor: true])\n"
+                + "  echo \"outcome == ${r}\"\n"
+                + "}"));
+        j.assertLogContains("outcome == auto", j.assertBuildStatusSuccess(foo.scheduleBuild2(0)));
+    }
+
     private void runAndAbort(JenkinsRule.WebClient webClient, WorkflowJob foo, String loginAs, boolean expectAbortOk) throws Exception {
         // get the build going, and wait until workflow pauses
         QueueTaskFuture<WorkflowRun> queueTaskFuture = foo.scheduleBuild2(0);
@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.cache;
+
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.Assert.assertEquals;
+
+public class ActionCacheTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private String origSharedNamespaces;
+
+    @Before
+    public void setUp() {
+        origSharedNamespaces = ActionCache.SHARED_NAMESPACES;
+    }
+
+    @After
+    public void tearDown() {
+        ActionCache.SHARED_NAMESPACES = origSharedNamespaces;
+    }
+
+    @Test
+    public void unchangedInputsSkipAction() throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("node {\n"
+                + "  deleteDir()\n"
+                + "  writeFile(file: 'in.txt', text: 'input-' + (env.BUILD_NUMBER == '3' ? 'changed' : 'same'))\n"
+                + "  runPipelineAction([name: 'cachedGenerator', text: 'hello'])\n"
+                + "  echo 'result == ' + readFile('out.txt')\n"
+                + "}"));
+
+        WorkflowRun b1 = j.buildAndAssertSuccess(p);
+        j.assertLogContains("generating out.txt", b1);
+        j.assertLogContains("result == hello:input-same", b1);
+        assertEquals(1, b1.getAction(ActionCacheAction.class).getMisses("cachedGenerator"));
+
+        // Workspace was wiped, but the output is restored from the cache without running the action.
+        WorkflowRun b2 = j.buildAndAssertSuccess(p);
+        j.assertLogNotContains("generating out.txt", b2);
+        j.assertLogContains("result == hello:input-same", b2);
+        assertEquals(1, b2.getAction(ActionCacheAction.class).getHits("cachedGenerator"));
+
+        // Changed input, so the action runs again.
+        WorkflowRun b3 = j.buildAndAssertSuccess(p);
+        j.assertLogContains("generating out.txt", b3);
+        j.assertLogContains("result == hello:input-changed", b3);
+        assertEquals(1, b3.getAction(ActionCacheAction.class).getMisses("cachedGenerator"));
+    }
+
+    @Test
+    public void entriesScopedToJobUnlessShared() throws Exception {
+        ActionCache.SHARED_NAMESPACES = "common";
+        // No inputs or outputs, so no node needed.
+        String script = "runPipelineAction([name: 'simpleEcho', greeting: 'hi', cache: [:]])\n"
+                + "runPipelineAction([name: 'simpleEcho', greeting: 'all', cache: [shared: 'common']])";
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition(script));
+        WorkflowJob q = j.jenkins.createProject(WorkflowJob.class, "q");
+        q.setDefinition(new CpsFlowDefinition(script));
+
+        WorkflowRun b1 = j.buildAndAssertSuccess(p);
+        j.assertLogContains("echoing greeting == hi", b1);
+        j.assertLogContains("echoing greeting == all", b1);
+        assertEquals(2, b1.getAction(ActionCacheAction.class).getMisses("simpleEcho"));
+
+        WorkflowRun b2 = j.buildAndAssertSuccess(p);
+        j.assertLogNotContains("echoing greeting", b2);
+        assertEquals(2, b2.getAction(ActionCacheAction.class).getHits("simpleEcho"));
+
+        // Another job only sees the shared entry.
+        WorkflowRun b3 = j.buildAndAssertSuccess(q);
+        j.assertLogContains("echoing greeting == hi", b3);
+        j.assertLogNotContains("echoing greeting == all", b3);
+        assertEquals(1, b3.getAction(ActionCacheAction.class).getMisses("simpleEcho"));
+        assertEquals(1, b3.getAction(ActionCacheAction.class).getHits("simpleEcho"));
+    }
+
+    @Test
+    public void sharedEntriesNotVisibleToUnrelatedJobs() throws Exception {
+        ActionCache.SHARED_NAMESPACES = "common";
+        String script = "runPipelineAction([name: 'simpleEcho', greeting: 'all', cache: [shared: 'common']])\n"
+                + "runPipelineAction([name: 'simpleEcho', greeting: 'other', cache: [shared: 'unlisted']])";
+        WorkflowJob p = j.createFolder("a").createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition(script));
+        WorkflowJob q = j.createFolder("b").createProject(WorkflowJob.class, "q");
+        q.setDefinition(new CpsFlowDefinition(script));
+
+        WorkflowRun b1 = j.buildAndAssertSuccess(p);
+        assertEquals(2, b1.getAction(ActionCacheAction.class).getMisses("simpleEcho"));
+        j.assertLogContains("Shared cache namespace 'unlisted' isn't allowed", b1);
+
+        // A job in another folder can neither reuse the entries...
+        WorkflowRun b2 = j.buildAndAssertSuccess(q);
+        j.assertLogContains("echoing greeting == all", b2);
+        j.assertLogContains("echoing greeting == other", b2);
+        assertEquals(2, b2.getAction(ActionCacheAction.class).getMisses("simpleEcho"));
+
+        // ...nor overwrite them.
+        WorkflowRun b3 = j.buildAndAssertSuccess(p);
+        j.assertLogNotContains("echoing greeting", b3);
+        assertEquals(2, b3.getAction(ActionCacheAction.class).getHits("simpleEcho"));
+    }
+
+    @Test
+    public void changedOutputsMissCache() throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("node {\n"
+                + "  writeFile(file: 'a.txt', text: 'a')\n"
+                + "  writeFile(file: 'b.txt', text: 'b')\n"
+                + "  runPipelineAction([name: 'simpleEcho', greeting: 'hi',\n"
+                + "                     cache: [outputs: env.BUILD_NUMBER == '3' ? 'b.txt' : 'a.txt']])\n"
+                + "}"));
+
+        j.buildAndAssertSuccess(p);
+        assertEquals(1, j.buildAndAssertSuccess(p).getAction(ActionCacheAction.class).getHits("simpleEcho"));
+        assertEquals(1, j.buildAndAssertSuccess(p).getAction(ActionCacheAction.class).getMisses("simpleEcho"));
+    }
+}
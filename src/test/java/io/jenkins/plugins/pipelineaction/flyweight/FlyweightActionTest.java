@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.flyweight;
+
+import hudson.model.Result;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.cps.nodes.StepAtomNode;
+import org.jenkinsci.plugins.workflow.graph.FlowGraphWalker;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class FlyweightActionTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void runsAsSingleStep() throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition(
+                "def r = runPipelineAction([name: 'flyweightGreeter', who: 'world'])\n"
+                + "echo \"returned ${r}\"\n"));
+
+        WorkflowRun b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("Hello, world", b);
+        j.assertLogContains("returned greeted world", b);
+
+        int flyweights = 0;
+        int atoms = 0;
+        for (FlowNode n : new FlowGraphWalker(b.getExecution())) {
+            if (n instanceof StepAtomNode) {
+                atoms++;
+                if (((StepAtomNode) n).getDescriptor() instanceof FlyweightActionStep.DescriptorImpl) {
+                    flyweights++;
+                }
+            }
+        }
+        assertEquals(1, flyweights);
+        // The flyweight and the echo.
+        assertEquals(2, atoms);
+    }
+
+    @Test
+    public void missingFieldsFailUpFront() throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("runPipelineAction([name: 'flyweightGreeter'])\n"));
+
+        WorkflowRun b = j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0).get());
+        j.assertLogContains("Missing required field(s) for 'flyweightGreeter' action: who", b);
+    }
+
+    @Test
+    public void nullFieldCountsAsMissing() throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("runPipelineAction([name: 'flyweightGreeter', who: null])\n"));
+
+        WorkflowRun b = j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0).get());
+        j.assertLogContains("Missing required field(s) for 'flyweightGreeter' action: who", b);
+    }
+
+    @Test
+    public void policyRunsScriptInstead() throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition(
+                "def r = runPipelineAction([name: 'flyweightGreeter', who: 'world', policy: [timeout: 60]])\n"
+                + "echo \"returned ${r}\"\n"));
+
+        WorkflowRun b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("Hello, world", b);
+        j.assertLogContains("returned greeted world", b);
+
+        for (FlowNode n : new FlowGraphWalker(b.getExecution())) {
+            if (n instanceof StepAtomNode) {
+                assertFalse(((StepAtomNode) n).getDescriptor() instanceof FlyweightActionStep.DescriptorImpl);
+            }
+        }
+    }
+}
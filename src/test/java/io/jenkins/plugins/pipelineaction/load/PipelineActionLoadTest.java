@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.load;
+
+import hudson.ExtensionList;
+import io.jenkins.plugins.pipelineaction.PipelineActionType;
+import io.jenkins.plugins.pipelineaction.sources.ArchivePipelineActionSet;
+import io.jenkins.plugins.pipelineaction.sources.GlobalRepoPipelineAction;
+import io.jenkins.plugins.pipelineaction.sources.GlobalRepoPipelineActionSet;
+import io.jenkins.plugins.pipelineaction.sources.PipelineActionArchive;
+import io.jenkins.plugins.pipelineaction.summary.ActionSummary;
+import org.apache.commons.io.FileUtils;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.cps.global.WorkflowLibRepository;
+import org.jenkinsci.plugins.workflow.graph.FlowGraphWalker;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Load and soak test for "runPipelineAction". Starts many concurrent pipelines calling a mix of synthetic actions -
+ * from a {@link PipelineActionArchive} - and global library actions, and reports throughput, per-action latency,
+ * heap growth and program.dat sizes.
+ *
+ * Not run by default - run with "mvn test -P load-test". Sizes can be changed with system properties, e.g.
+ * "-Dload.pipelines=500 -Dload.rounds=5". The report is printed and written to target/pipeline-action-load-report.txt.
+ */
+public class PipelineActionLoadTest {
+    private static final int PIPELINES = Integer.getInteger("load.pipelines", 200);
+    private static final int ACTIONS_PER_PIPELINE = Integer.getInteger("load.actionsPerPipeline", 20);
+    private static final int SYNTHETIC_ACTIONS = Integer.getInteger("load.syntheticActions", 100);
+    private static final int GLOBAL_ACTIONS = Integer.getInteger("load.globalActions", 20);
+    private static final int ROUNDS = Integer.getInteger("load.rounds", 1);
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private int semaphores;
+
+    @Test
+    public void concurrentPipelines() throws Exception {
+        createSyntheticActions();
+        createGlobalActions();
+
+        List<WorkflowJob> jobs = new ArrayList<WorkflowJob>();
+        for (int i = 0; i < PIPELINES; i++) {
+            WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "load-" + i);
+            p.setDefinition(new CpsFlowDefinition(pipeline(i)));
+            jobs.add(p);
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ENGLISH,
+                "%d pipelines x %d actions, %d synthetic and %d global library actions, %d round(s)%n",
+                PIPELINES, ACTIONS_PER_PIPELINE * 2, SYNTHETIC_ACTIONS, GLOBAL_ACTIONS, ROUNDS));
+
+        long baselineHeap = usedHeap();
+        for (int round = 1; round <= ROUNDS; round++) {
+            report.append(runRound(round, jobs, baselineHeap));
+        }
+
+        System.out.println(report);
+        File out = new File("target", "pipeline-action-load-report.txt");
+        FileUtils.writeStringToFile(out, report.toString());
+    }
+
+    private String runRound(int round, List<WorkflowJob> jobs, long baselineHeap) throws Exception {
+        long start = System.nanoTime();
+        List<WorkflowRun> builds = new ArrayList<WorkflowRun>();
+        for (WorkflowJob p : jobs) {
+            builds.add(p.scheduleBuild2(0).getStartCondition().get());
+        }
+
+        // Every build pauses halfway through, so we can see how big its program state has got.
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < builds.size(); i++) {
+            String id = "load/" + (++semaphores);
+            SemaphoreStep.waitForStart(id, null);
+            ids.add(id);
+        }
+        List<Long> programSizes = new ArrayList<Long>();
+        for (WorkflowRun b : builds) {
+            programSizes.add(new File(b.getRootDir(), "program.dat").length());
+        }
+        for (String id : ids) {
+            SemaphoreStep.success(id, null);
+        }
+
+        List<Long> latencies = new ArrayList<Long>();
+        for (WorkflowRun b : builds) {
+            j.assertBuildStatusSuccess(j.waitForCompletion(b));
+            for (FlowNode n : new FlowGraphWalker(b.getExecution())) {
+                ActionSummary s = n.getAction(ActionSummary.class);
+                if (s != null) {
+                    latencies.add(s.getDurationMillis());
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        assertEquals(builds.size() * ACTIONS_PER_PIPELINE * 2, latencies.size());
+        Collections.sort(latencies);
+        Collections.sort(programSizes);
+
+        return String.format(Locale.ENGLISH,
+                "round %d: %.1f actions/s, latency p50 %d ms / p99 %d ms, heap growth %d KB, "
+                        + "program.dat p50 %d KB / max %d KB%n",
+                round, latencies.size() / seconds, percentile(latencies, 0.5), percentile(latencies, 0.99),
+                (usedHeap() - baselineHeap) / 1024, percentile(programSizes, 0.5) / 1024,
+                programSizes.get(programSizes.size() - 1) / 1024);
+    }
+
+    private static String pipeline(int n) {
+        return "for (int i = 0; i < " + ACTIONS_PER_PIPELINE + "; i++) {\n"
+                + "  runPipelineAction([name: 'synthetic' + ((i + " + n + ") % " + SYNTHETIC_ACTIONS + "), value: i, light: true])\n"
+                + "  runPipelineAction([name: 'LoadGlobal' + ((i + " + n + ") % " + GLOBAL_ACTIONS + "), value: i, light: true])\n"
+                + "  if (i == " + (ACTIONS_PER_PIPELINE / 2) + ") {\n"
+                + "    semaphore 'load'\n"
+                + "  }\n"
+                + "}\n";
+    }
+
+    private static String actionSource(String pkg, String className) {
+        return "package " + pkg + "\n"
+                + "import io.jenkins.plugins.pipelineaction.PipelineAction\n"
+                + "import io.jenkins.plugins.pipelineaction.actions.AbstractPipelineActionScript\n"
+                + "import org.jenkinsci.plugins.workflow.cps.CpsScript\n"
+                + "class " + className + " extends AbstractPipelineActionScript {\n"
+                + "    public " + className + "(CpsScript script, PipelineAction actionDefinition) {\n"
+                + "        super(script, actionDefinition)\n"
+                + "    }\n"
+                + "    def call(Map args) {\n"
+                + "        script.echo \"" + className + " ${args.value}\"\n"
+                + "    }\n"
+                + "}\n";
+    }
+
+    private void createSyntheticActions() throws Exception {
+        PipelineActionArchive.Writer writer = new PipelineActionArchive.Writer();
+        for (int i = 0; i < SYNTHETIC_ACTIONS; i++) {
+            String className = "Synthetic" + i;
+            writer.add("synthetic" + i, className, PipelineActionType.STANDARD,
+                    Collections.singletonMap("value", true), false,
+                    actionSource("io.jenkins.plugins.pipelineaction.load", className));
+        }
+        writer.writeTo(ArchivePipelineActionSet.getArchiveFile());
+        ExtensionList.lookup(ArchivePipelineActionSet.class).get(ArchivePipelineActionSet.class).rebuild();
+    }
+
+    private void createGlobalActions() throws Exception {
+        WorkflowLibRepository repo = j.jenkins.getInjector().getInstance(WorkflowLibRepository.class);
+        File dir = new File(repo.workspace, GlobalRepoPipelineAction.ACTIONS_PREFIX + "/io/jenkins/plugins/pipelineaction/load");
+        for (int i = 0; i < GLOBAL_ACTIONS; i++) {
+            String className = "LoadGlobal" + i;
+            FileUtils.writeStringToFile(new File(dir, className + ".groovy"),
+                    actionSource("io.jenkins.plugins.pipelineaction.load", className));
+        }
+        ExtensionList.lookup(GlobalRepoPipelineActionSet.class).get(GlobalRepoPipelineActionSet.class).rebuild();
+    }
+
+    private static long percentile(List<Long> sorted, double q) {
+        int i = (int) Math.ceil(q * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, i)));
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.notifications;
+
+import jenkins.model.JenkinsLocationConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.mock_javamail.Mailbox;
+
+import javax.mail.Message;
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationCoalescerTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private int origWindow;
+    private int origCapacity;
+    private int origRefill;
+
+    @Before
+    public void setUp() {
+        origWindow = NotificationCoalescer.WINDOW_SECONDS;
+        origCapacity = NotificationCoalescer.BUCKET_CAPACITY;
+        origRefill = NotificationCoalescer.REFILL_SECONDS;
+        // Never flush on our own - the tests flush explicitly.
+        NotificationCoalescer.WINDOW_SECONDS = 3600;
+
+        Mailbox.clearAll();
+        JenkinsLocationConfiguration.get().setAdminAddress("jenkins@example.com");
+    }
+
+    @After
+    public void tearDown() {
+        NotificationCoalescer.WINDOW_SECONDS = origWindow;
+        NotificationCoalescer.BUCKET_CAPACITY = origCapacity;
+        NotificationCoalescer.REFILL_SECONDS = origRefill;
+    }
+
+    @Test
+    public void coalescesNotificationsForSameRecipient() throws Exception {
+        WorkflowJob p = createNotifyingJob("ops@example.com");
+        for (int i = 0; i < 3; i++) {
+            j.buildAndAssertSuccess(p);
+        }
+        // Nothing sent until the window closes.
+        assertEquals(0, Mailbox.get("ops@example.com").size());
+
+        NotificationCoalescer.get().flushAll();
+
+        List<Message> inbox = waitForMail("ops@example.com", 1);
+        assertEquals(1, inbox.size());
+        assertTrue(inbox.get(0).getSubject().startsWith("3 notifications: "));
+    }
+
+    @Test
+    public void rateLimitedDigestsOverflowToDisk() throws Exception {
+        NotificationCoalescer.BUCKET_CAPACITY = 1;
+        NotificationCoalescer.REFILL_SECONDS = 3600;
+
+        WorkflowJob p = createNotifyingJob("dev@example.com");
+        j.buildAndAssertSuccess(p);
+        NotificationCoalescer.get().flushAll();
+        j.buildAndAssertSuccess(p);
+        NotificationCoalescer.get().flushAll();
+
+        assertEquals(1, waitForMail("dev@example.com", 1).size());
+        assertEquals(1, queuedDigests());
+        // Queued by recipient.
+        assertEquals(1, NotificationCoalescer.getOverflowDir().list().length);
+
+        // Refill immediately and drain the queue.
+        NotificationCoalescer.REFILL_SECONDS = 0;
+        NotificationCoalescer.get().drainOverflow();
+
+        assertEquals(2, waitForMail("dev@example.com", 2).size());
+        assertEquals(0, queuedDigests());
+    }
+
+    @Test
+    public void queuedDigestsAreSentBeforeNewOnes() throws Exception {
+        NotificationCoalescer.BUCKET_CAPACITY = 1;
+        NotificationCoalescer.REFILL_SECONDS = 3600;
+
+        WorkflowJob p = createNotifyingJob("qa@example.com");
+        j.buildAndAssertSuccess(p);
+        NotificationCoalescer.get().flushAll();
+        j.buildAndAssertSuccess(p);
+        NotificationCoalescer.get().flushAll();
+        assertEquals(1, waitForMail("qa@example.com", 1).size());
+
+        // The next flush has capacity again, but the queued digest for build 2 has to go first.
+        NotificationCoalescer.REFILL_SECONDS = 0;
+        j.buildAndAssertSuccess(p);
+        NotificationCoalescer.get().flushAll();
+
+        List<Message> inbox = waitForMail("qa@example.com", 3);
+        assertEquals(3, inbox.size());
+        assertEquals(0, queuedDigests());
+    }
+
+    @Test
+    public void notificationsWithDifferentHeadersAreNotCoalesced() throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("runPipelineAction('notifier', [name: 'email', coalesce: true,\n"
+                + "to: 'ops@example.com', from: 'build' + env.BUILD_NUMBER + '@example.com',\n"
+                + "subject: 'Build ' + env.BUILD_NUMBER + ' failed', body: 'Broken'])"));
+        j.buildAndAssertSuccess(p);
+        j.buildAndAssertSuccess(p);
+
+        NotificationCoalescer.get().flushAll();
+
+        List<Message> inbox = waitForMail("ops@example.com", 2);
+        assertEquals(2, inbox.size());
+        for (Message m : inbox) {
+            String subject = m.getSubject();
+            assertTrue(subject, subject.startsWith("Build "));
+            assertEquals("build" + subject.substring(6, 7) + "@example.com", m.getFrom()[0].toString());
+        }
+    }
+
+    /**
+     * @return The number of digests in the overflow queue, across all recipients.
+     */
+    static int queuedDigests() {
+        File dir = NotificationCoalescer.getOverflowDir();
+        return dir.isDirectory() ? FileUtils.listFiles(dir, null, true).size() : 0;
+    }
+
+    /**
+     * Delivery happens on the dispatcher's worker threads, so wait for it.
+     */
+    static List<Message> waitForMail(String address, int count) throws Exception {
+        List<Message> inbox = Mailbox.get(address);
+        for (int i = 0; i < 100 && inbox.size() < count; i++) {
+            Thread.sleep(100);
+        }
+        return inbox;
+    }
+
+    private WorkflowJob createNotifyingJob(String to) throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("runPipelineAction('notifier', [name: 'email', coalesce: true,\n"
+                + "to: '" + to + "', subject: 'Build ' + env.BUILD_NUMBER + ' failed', body: 'Broken'])"));
+        return p;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.notifications;
+
+import jenkins.model.JenkinsLocationConfiguration;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.mock_javamail.Mailbox;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+public class NotificationDispatcherTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Before
+    public void setUp() {
+        Mailbox.clearAll();
+        JenkinsLocationConfiguration.get().setAdminAddress("jenkins@example.com");
+    }
+
+    @Test
+    public void asyncNotificationRecordedOnBuild() throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("runPipelineAction('notifier', [name: 'email', async: true,\n"
+                + "to: 'ops@example.com', subject: 'Done', body: 'All good'])"));
+        WorkflowRun b = j.buildAndAssertSuccess(p);
+
+        assertEquals(1, NotificationCoalescerTest.waitForMail("ops@example.com", 1).size());
+
+        NotificationDeliveryAction a = null;
+        for (int i = 0; i < 100 && (a == null || a.getDeliveries().isEmpty()); i++) {
+            Thread.sleep(100);
+            a = b.getAction(NotificationDeliveryAction.class);
+        }
+        assertNotNull(a);
+        assertEquals(1, a.getDeliveries().size());
+        assertEquals(NotificationDeliveryAction.State.DELIVERED, a.getDeliveries().get(0).getState());
+        assertEquals("ops@example.com", a.getDeliveries().get(0).getRecipient());
+    }
+
+    @Test
+    public void unsentNotificationsQueuedAtShutdown() throws Exception {
+        int origBackoff = NotificationDispatcher.INITIAL_BACKOFF_SECONDS;
+        NotificationDispatcher.INITIAL_BACKOFF_SECONDS = 3600;
+        try {
+            Mailbox.get("down@example.com").setError(true);
+            WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+            p.setDefinition(new CpsFlowDefinition("runPipelineAction('notifier', [name: 'email', async: true,\n"
+                    + "to: 'down@example.com', subject: 'Done', body: 'All good'])"));
+            j.buildAndAssertSuccess(p);
+
+            // Whether the first attempt is still queued, running or waiting to be retried, it ends up on disk.
+            NotificationDispatcher.shutdown();
+            int queued = 0;
+            for (int i = 0; i < 100 && queued == 0; i++) {
+                Thread.sleep(100);
+                queued = NotificationCoalescerTest.queuedDigests();
+            }
+            assertEquals(1, queued);
+            assertFalse(NotificationDispatcher.get().dispatch(new ArrayList<Notification>()));
+        } finally {
+            NotificationDispatcher.INITIAL_BACKOFF_SECONDS = origBackoff;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.plan;
+
+import hudson.model.Result;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ActionPlanTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private static final String JENKINSFILE = "node {\n"
+            + "  runPipelineAction([name: 'script', script: 'echo hi'])\n"
+            + "  runPipelineAction('notifier', [name: 'email', subject: \"built ${env.BUILD_NUMBER}\"])\n"
+            + "  runPipelineAction([name: 'nonexistent'])\n"
+            + "  runPipelineAction('notifier', [name: 'script', script: 'true'])\n"
+            + "  def name = 'script'\n"
+            + "  runPipelineAction([name: name])\n"
+            + "}\n";
+
+    @Test
+    public void scanFindsInvocations() throws Exception {
+        List<ActionInvocation> found = ActionPlanner.scan(JENKINSFILE);
+        assertEquals(5, found.size());
+
+        assertEquals("script", found.get(0).getName());
+        assertEquals(2, found.get(0).getLine());
+        assertEquals("notifier", found.get(1).getType());
+        assertTrue(found.get(1).getArgs().containsKey("subject"));
+        assertNull(found.get(1).getArgs().get("subject"));
+        assertNull(found.get(4).getName());
+    }
+
+    @Test
+    public void planReportsProblems() throws Exception {
+        ActionPlanReport report = ActionPlanner.plan(ActionPlanner.scan(JENKINSFILE), null);
+        assertFalse(report.isOk());
+
+        List<ActionPlanReport.Entry> entries = report.getEntries();
+        assertTrue(entries.get(0).getErrors().isEmpty());
+        assertEquals("Missing required field(s) for 'email' action: body", entries.get(1).getErrors().get(0));
+        assertEquals("No PipelineAction with name nonexistent exists.", entries.get(2).getErrors().get(0));
+        assertEquals("PipelineAction with name script exists but is not of type 'notifier'.",
+                entries.get(3).getErrors().get(0));
+        assertTrue(entries.get(4).getErrors().isEmpty());
+        assertEquals(1, entries.get(4).getWarnings().size());
+        assertEquals(3, report.getErrorCount());
+    }
+
+    @Test
+    public void variableTypeIsNotChecked() throws Exception {
+        List<ActionInvocation> found = ActionPlanner.scan("def t = 'notifier'\n"
+                + "runPipelineAction(t, [name: 'script', script: 'true'])\n");
+        assertEquals(1, found.size());
+        assertEquals("script", found.get(0).getName());
+        assertEquals("any", found.get(0).getType());
+        assertTrue(found.get(0).isArgsKnown());
+
+        ActionPlanReport report = ActionPlanner.plan(found, null);
+        assertTrue(report.isOk());
+        assertTrue(report.getEntries().get(0).getErrors().isEmpty());
+    }
+
+    @Test
+    public void planStepFailsBuildBeforeWork() throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("pipelineActionPlan()\n"
+                + "echo 'starting real work'\n"
+                + "runPipelineAction([name: 'nonexistent'])\n"));
+
+        WorkflowRun b = j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0).get());
+        j.assertLogContains("No PipelineAction with name nonexistent exists.", b);
+        j.assertLogNotContains("starting real work", b);
+    }
+
+    @Test
+    public void planStepWithInvocations() throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition(
+                "def ok = pipelineActionPlan(failOnError: false, invocations: [\n"
+                + "  [args: [name: 'script', script: 'true']],\n"
+                + "  [type: 'notifier', args: [name: 'email', subject: 's', body: 'b']]])\n"
+                + "echo \"plan ok == ${ok}\"\n"));
+
+        WorkflowRun b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("Checked 2 action invocation(s), 0 error(s)", b);
+        j.assertLogContains("plan ok == true", b);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.policy;
+
+import hudson.model.Result;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ActionPolicyTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private int origThreshold;
+    private int origOpen;
+
+    @Before
+    public void setUp() {
+        origThreshold = CircuitBreaker.FAILURE_THRESHOLD;
+        origOpen = CircuitBreaker.OPEN_SECONDS;
+    }
+
+    @After
+    public void tearDown() {
+        CircuitBreaker.FAILURE_THRESHOLD = origThreshold;
+        CircuitBreaker.OPEN_SECONDS = origOpen;
+    }
+
+    @Test
+    public void retriesFailedAction() throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("node {\n"
+                + "  deleteDir()\n"
+                + "  runPipelineAction([name: 'script', script: 'test -f marker || (touch marker; exit 1)',\n"
+                + "                     policy: [retries: 2, backoff: 1]])\n"
+                + "}"));
+
+        WorkflowRun b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("retrying in 1s (attempt 1 of 3)", b);
+    }
+
+    @Test
+    public void timeoutAbortsBlockedAction() throws Exception {
+        CircuitBreaker.FAILURE_THRESHOLD = 2;
+
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("runPipelineAction([name: 'semaphoreWaiter',\n"
+                + "                   policy: [timeout: 1, retries: 1, backoff: 0, circuitBreaker: true]])\n"
+                + "echo 'not reached'"));
+
+        WorkflowRun b = p.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("block/1", b);
+        // The timeout counts as a failure, not as someone aborting the build - so it's retried...
+        SemaphoreStep.waitForStart("block/2", b);
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(b));
+        j.assertLogContains("retrying in 0s (attempt 1 of 2)", b);
+        j.assertLogNotContains("not reached", b);
+        // ...and both attempts count against the circuit.
+        assertEquals(CircuitBreaker.State.OPEN, CircuitBreaker.get().getState("semaphoreWaiter"));
+    }
+
+    @Test
+    public void openCircuitFailsFast() throws Exception {
+        CircuitBreaker.FAILURE_THRESHOLD = 2;
+
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("node {\n"
+                + "  runPipelineAction([name: 'script', script: 'exit 1', policy: [circuitBreaker: true]])\n"
+                + "}"));
+
+        j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0).get());
+        j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0).get());
+        assertEquals(CircuitBreaker.State.OPEN, CircuitBreaker.get().getState("script"));
+
+        WorkflowRun b = j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0).get());
+        j.assertLogContains("Action 'script' has failed repeatedly across builds - failing fast.", b);
+    }
+
+    @Test
+    public void abortedTrialLetsAnotherThrough() throws Exception {
+        CircuitBreaker.FAILURE_THRESHOLD = 1;
+        CircuitBreaker.OPEN_SECONDS = 1;
+        CircuitBreaker breaker = CircuitBreaker.get();
+        breaker.recordFailure("flaky");
+        Thread.sleep(1100);
+
+        // One trial at a time...
+        assertTrue(breaker.allowRequest("flaky"));
+        assertFalse(breaker.allowRequest("flaky"));
+        // ...but an aborted trial doesn't hold up the next one.
+        breaker.recordAbort("flaky");
+        assertTrue(breaker.allowRequest("flaky"));
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.policy;
+
+import hudson.model.Result;
+import io.jenkins.plugins.pipelineaction.PipelineActionType;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ActionSchedulerTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private String origCaps;
+    private int origMaxRunning;
+
+    private final List<String> granted = new ArrayList<String>();
+
+    @Before
+    public void setUp() {
+        origCaps = ActionScheduler.CAPS;
+        origMaxRunning = ActionScheduler.MAX_RUNNING;
+    }
+
+    @After
+    public void tearDown() {
+        ActionScheduler.CAPS = origCaps;
+        ActionScheduler.MAX_RUNNING = origMaxRunning;
+    }
+
+    private ActionScheduler.Request request(final String action, PipelineActionType type, int cost) {
+        return new ActionScheduler.Request(action, type, cost) {
+            @Override
+            protected void granted() {
+                granted.add(action);
+            }
+        };
+    }
+
+    @Test
+    public void cheapActionsGoFirst() {
+        ActionScheduler.MAX_RUNNING = 1;
+        ActionScheduler scheduler = new ActionScheduler();
+
+        scheduler.submit(request("compile", PipelineActionType.STANDARD, 60));
+        scheduler.submit(request("test", PipelineActionType.STANDARD, 30));
+        scheduler.submit(request("mail", PipelineActionType.NOTIFIER, 1));
+        assertEquals(Arrays.asList("compile"), granted);
+        assertEquals(2, scheduler.getWaitingCount());
+
+        scheduler.release(PipelineActionType.STANDARD);
+        assertEquals(Arrays.asList("compile", "mail"), granted);
+
+        scheduler.release(PipelineActionType.NOTIFIER);
+        assertEquals(Arrays.asList("compile", "mail", "test"), granted);
+    }
+
+    @Test
+    public void capsArePerType() {
+        ActionScheduler.CAPS = "standard=1";
+        ActionScheduler scheduler = new ActionScheduler();
+
+        scheduler.submit(request("compile", PipelineActionType.STANDARD, 60));
+        scheduler.submit(request("test", PipelineActionType.STANDARD, 30));
+        scheduler.submit(request("mail", PipelineActionType.NOTIFIER, 1));
+        assertEquals(Arrays.asList("compile", "mail"), granted);
+        assertEquals(1, scheduler.getRunning(PipelineActionType.STANDARD));
+
+        scheduler.release(PipelineActionType.STANDARD);
+        assertEquals(Arrays.asList("compile", "mail", "test"), granted);
+    }
+
+    @Test
+    public void actionRunsInSlot() throws Exception {
+        ActionScheduler.MAX_RUNNING = 1;
+
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("node {\n"
+                + "  runPipelineAction([name: 'script', script: 'echo first'])\n"
+                + "  runPipelineAction([name: 'script', script: 'echo second'])\n"
+                + "}"));
+
+        WorkflowRun b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("second", b);
+        assertEquals(0, ActionScheduler.get().getRunning(PipelineActionType.STANDARD));
+    }
+
+    @Test
+    public void cappedActionWaitsBeforeTakingExecutor() throws Exception {
+        ActionScheduler.CAPS = "standard=1";
+        j.jenkins.setNumExecutors(2);
+
+        WorkflowJob first = j.jenkins.createProject(WorkflowJob.class, "first");
+        first.setDefinition(new CpsFlowDefinition("runPipelineAction([name: 'nodeSemaphoreWaiter'])"));
+        WorkflowRun b1 = first.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("block/1", b1);
+        // Given a node once it had its slot.
+        j.assertLogContains("Running on", b1);
+
+        // The second compile waits for a slot without taking an executor.
+        WorkflowJob second = j.jenkins.createProject(WorkflowJob.class, "second");
+        second.setDefinition(new CpsFlowDefinition("runPipelineAction([name: 'nodeSemaphoreWaiter'])"));
+        WorkflowRun b2 = second.scheduleBuild2(0).waitForStart();
+        for (int i = 0; i < 100 && ActionScheduler.get().getWaitingCount() == 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(1, ActionScheduler.get().getWaitingCount());
+        j.assertLogContains("Waiting for a slot to run action 'nodeSemaphoreWaiter'", b2);
+        j.assertLogNotContains("Running on", b2);
+        assertEquals(1, j.jenkins.toComputer().countBusy());
+
+        // Uncapped work still gets the free executor.
+        WorkflowJob notifier = j.jenkins.createProject(WorkflowJob.class, "notifier");
+        notifier.setDefinition(new CpsFlowDefinition(
+                "runPipelineAction('notifier', [name: 'echoToFileNotifier', file: 'out.txt'])"));
+        j.buildAndAssertSuccess(notifier);
+        assertEquals(1, ActionScheduler.get().getWaitingCount());
+
+        SemaphoreStep.success("block/1", null);
+        j.assertBuildStatusSuccess(j.waitForCompletion(b1));
+        SemaphoreStep.waitForStart("block/2", b2);
+        j.assertLogContains("Running on", b2);
+        SemaphoreStep.success("block/2", null);
+        j.assertBuildStatusSuccess(j.waitForCompletion(b2));
+        assertEquals(0, ActionScheduler.get().getRunning(PipelineActionType.STANDARD));
+    }
+
+    @Test
+    public void nestedSlotsInSameBuildDontDeadlock() throws Exception {
+        ActionScheduler.CAPS = "standard=1";
+
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("pipelineActionSlot(action: 'outer') {\n"
+                + "  pipelineActionSlot(action: 'inner') { echo 'ran inner' }\n"
+                + "}"));
+        j.assertLogContains("ran inner", j.buildAndAssertSuccess(p));
+        assertEquals(0, ActionScheduler.get().getRunning(PipelineActionType.STANDARD));
+    }
+
+    @Test
+    public void stoppingReleasesSlot() throws Exception {
+        ActionScheduler.MAX_RUNNING = 1;
+
+        WorkflowJob holder = j.jenkins.createProject(WorkflowJob.class, "holder");
+        holder.setDefinition(new CpsFlowDefinition("pipelineActionSlot(action: 'a') { semaphore 'held' }"));
+        WorkflowRun b1 = holder.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("held/1", b1);
+
+        WorkflowJob waiter = j.jenkins.createProject(WorkflowJob.class, "waiter");
+        waiter.setDefinition(new CpsFlowDefinition("pipelineActionSlot(action: 'b') { echo 'ran b' }"));
+        WorkflowRun b2 = waiter.scheduleBuild2(0).waitForStart();
+        for (int i = 0; i < 100 && ActionScheduler.get().getWaitingCount() == 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(1, ActionScheduler.get().getWaitingCount());
+
+        // Stopping a waiting action withdraws its request.
+        b2.doStop();
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(b2));
+        j.assertLogNotContains("ran b", b2);
+        assertEquals(0, ActionScheduler.get().getWaitingCount());
+
+        // Stopping a running one cancels its body, which releases the slot.
+        b1.doStop();
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(b1));
+        assertEquals(0, ActionScheduler.get().getRunning(PipelineActionType.STANDARD));
+    }
+}
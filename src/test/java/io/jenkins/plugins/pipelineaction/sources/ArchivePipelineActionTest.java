@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.sources;
+
+import hudson.ExtensionList;
+import hudson.Util;
+import io.jenkins.plugins.pipelineaction.PipelineActionType;
+import org.apache.commons.io.IOUtils;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class ArchivePipelineActionTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void actionFromArchive() throws Exception {
+        String source = IOUtils.toString(
+                getClass().getResource("/io/jenkins/plugins/pipelineaction/sources/GlobalRepoDemoAction.groovy"));
+
+        new PipelineActionArchive.Writer()
+                .add("ArchiveDemoAction", "GlobalRepoDemoAction", PipelineActionType.STANDARD,
+                        Collections.singletonMap("pants", true), false, source)
+                .writeTo(ArchivePipelineActionSet.getArchiveFile());
+
+        PipelineActionArchive archive = PipelineActionArchive.open(ArchivePipelineActionSet.getArchiveFile());
+        assertEquals(1, archive.getEntries().size());
+        assertEquals(source, archive.readSource(archive.getEntries().get(0)));
+
+        ExtensionList.lookup(ArchivePipelineActionSet.class).get(ArchivePipelineActionSet.class).rebuild();
+
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition(
+                "runPipelineAction(['name':'ArchiveDemoAction', pants:'trousers'])\n"
+        ));
+
+        WorkflowRun b = j.buildAndAssertSuccess(p);
+        j.assertLogContains("echoing pants == trousers", b);
+    }
+
+    @Test
+    public void sameActionsGiveSameArchive() throws Exception {
+        File a = new File(j.jenkins.getRootDir(), "a.par");
+        File b = new File(j.jenkins.getRootDir(), "b.par");
+
+        new PipelineActionArchive.Writer()
+                .add("one", "One", PipelineActionType.STANDARD, Collections.<String,Boolean>emptyMap(), true, "1")
+                .add("two", "Two", PipelineActionType.NOTIFIER, Collections.<String,Boolean>emptyMap(), false, "2")
+                .writeTo(a);
+        new PipelineActionArchive.Writer()
+                .add("two", "Two", PipelineActionType.NOTIFIER, Collections.<String,Boolean>emptyMap(), false, "2")
+                .add("one", "One", PipelineActionType.STANDARD, Collections.<String,Boolean>emptyMap(), true, "1")
+                .writeTo(b);
+
+        assertEquals(Util.getDigestOf(a), Util.getDigestOf(b));
+        assertEquals(PipelineActionType.NOTIFIER, PipelineActionArchive.open(b).getEntries().get(1).getType());
+    }
+
+    @Test
+    public void corruptIndexRejected() throws Exception {
+        File f = ArchivePipelineActionSet.getArchiveFile();
+        new PipelineActionArchive.Writer()
+                .add("one", "One", PipelineActionType.STANDARD, Collections.<String,Boolean>emptyMap(), true, "1")
+                .writeTo(f);
+
+        // Negative entry count.
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            raf.seek(PipelineActionArchive.HEADER_LENGTH);
+            raf.writeInt(-1);
+        } finally {
+            raf.close();
+        }
+        try {
+            PipelineActionArchive.open(f);
+            fail("Expected a corrupt archive to be rejected");
+        } catch (IOException e) {
+            // Expected.
+        }
+
+        // Nothing loaded from it, and no exception escapes.
+        ArchivePipelineActionSet set = ExtensionList.lookup(ArchivePipelineActionSet.class)
+                .get(ArchivePipelineActionSet.class);
+        set.rebuild();
+        assertFalse(set.iterator().hasNext());
+    }
+}
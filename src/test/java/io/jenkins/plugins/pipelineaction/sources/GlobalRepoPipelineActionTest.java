@@ -17,12 +17,14 @@
 package io.jenkins.plugins.pipelineaction.sources;
 
 import hudson.model.Result;
+import io.jenkins.plugins.pipelineaction.PinnedGenerationsAction;
 import jenkins.model.Jenkins;
 import org.apache.commons.io.FileUtils;
 import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
 import org.jenkinsci.plugins.workflow.cps.global.WorkflowLibRepository;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runners.model.Statement;
@@ -31,6 +33,12 @@ import org.jvnet.hudson.test.RestartableJenkinsRule;
 import javax.inject.Inject;
 import java.io.File;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
 public class GlobalRepoPipelineActionTest {
     @Rule
     public RestartableJenkinsRule story = new RestartableJenkinsRule();
@@ -111,4 +119,148 @@ public class GlobalRepoPipelineActionTest {
 
     }
 
+    @Test
+    public void lookupsWithoutActionsDir() {
+        story.addStep(new Statement() {
+            @Override public void evaluate() throws Throwable {
+                FileUtils.deleteDirectory(new File(repo.workspace, GlobalRepoPipelineAction.ACTIONS_PREFIX));
+
+                WorkflowJob p = jenkins.createProject(WorkflowJob.class, "p");
+                p.setDefinition(new CpsFlowDefinition(
+                        "runPipelineAction([name: 'flyweightGreeter', who: 'world'])\n"
+                                + "runPipelineAction([name: 'flyweightGreeter', who: 'again'])\n"
+                ));
+                WorkflowRun b = story.j.buildAndAssertSuccess(p);
+                story.j.assertLogContains("Hello, again", b);
+
+                // Nothing to load, and nothing left for lookups to rebuild.
+                assertFalse(globalRepoPipelineActionSet.iterator().hasNext());
+                assertEquals(GlobalRepoPipelineActionSet.ABSENT, globalRepoPipelineActionSet.getFingerprint());
+
+                // Actions added later are still picked up.
+                File dir = new File(repo.workspace,"actions/io/jenkins/plugins/pipelineaction/sources");
+                dir.mkdirs();
+                FileUtils.copyURLToFile(
+                        getClass().getResource("/io/jenkins/plugins/pipelineaction/sources/GlobalRepoDemoAction.groovy"),
+                        new File(dir, "GlobalRepoDemoAction.groovy"));
+                globalRepoPipelineActionSet.rebuild();
+                assertTrue(globalRepoPipelineActionSet.iterator().hasNext());
+                assertNotEquals(GlobalRepoPipelineActionSet.ABSENT, globalRepoPipelineActionSet.getFingerprint());
+            }
+        });
+    }
+
+    @Test
+    public void runningBuildKeepsItsGeneration() {
+        story.addStep(new Statement() {
+            @Override public void evaluate() throws Throwable {
+                File dir = new File(repo.workspace,"actions/io/jenkins/plugins/pipelineaction/sources");
+                dir.mkdirs();
+
+                File outFile = new File(dir, "GlobalRepoDemoAction.groovy");
+                FileUtils.copyURLToFile(
+                        getClass().getResource("/io/jenkins/plugins/pipelineaction/sources/GlobalRepoDemoAction.groovy"),
+                        outFile);
+
+                // Hack to deal with the lack of an actual commit.
+                globalRepoPipelineActionSet.rebuild();
+                WorkflowJob p = jenkins.createProject(WorkflowJob.class, "p");
+
+                p.setDefinition(new CpsFlowDefinition(
+                        "runPipelineAction(['name':'GlobalRepoDemoAction', pants:'trousers'])\n"
+                                + "semaphore 'wait'\n"
+                                + "runPipelineAction(['name':'GlobalRepoDemoAction', shirts:'polos'])\n"
+                ));
+
+                WorkflowRun b1 = p.scheduleBuild2(0).getStartCondition().get();
+                SemaphoreStep.waitForStart("wait/1", b1);
+
+                // Change the action while the first build is still running.
+                String source = FileUtils.readFileToString(outFile);
+                FileUtils.writeStringToFile(outFile, source.replace("echoing", "changed echoing"));
+                globalRepoPipelineActionSet.rebuild();
+
+                SemaphoreStep.success("wait/1", null);
+                story.j.assertBuildStatusSuccess(story.j.waitForCompletion(b1));
+                story.j.assertLogContains("echoing shirts == polos", b1);
+                story.j.assertLogNotContains("changed echoing", b1);
+
+                // New builds get the new generation.
+                SemaphoreStep.success("wait/2", null);
+                WorkflowRun b2 = p.scheduleBuild2(0).getStartCondition().get();
+                story.j.assertBuildStatusSuccess(story.j.waitForCompletion(b2));
+                story.j.assertLogContains("changed echoing pants == trousers", b2);
+            }
+        });
+    }
+
+    @Test
+    public void pinSurvivesRestart() {
+        story.addStep(new Statement() {
+            @Override public void evaluate() throws Throwable {
+                startPinnedBuild();
+            }
+        });
+        story.addStep(new Statement() {
+            @Override public void evaluate() throws Throwable {
+                WorkflowRun b = jenkins.getItemByFullName("p", WorkflowJob.class).getBuildByNumber(1);
+                assertNotNull(b.getAction(PinnedGenerationsAction.class));
+                assertNotNull(b.getAction(PinnedGenerationsAction.class).getPinned()
+                        .get(GlobalRepoPipelineActionSet.class.getName()));
+
+                // Same definitions, new generation number - the build carries on.
+                SemaphoreStep.success("wait/1", null);
+                story.j.assertBuildStatusSuccess(story.j.waitForCompletion(b));
+                story.j.assertLogContains("echoing shirts == polos", b);
+            }
+        });
+    }
+
+    @Test
+    public void changeDuringRestartFailsBuild() {
+        story.addStep(new Statement() {
+            @Override public void evaluate() throws Throwable {
+                File outFile = startPinnedBuild();
+
+                // Change the action without a rebuild, so it's only picked up after the restart.
+                String source = FileUtils.readFileToString(outFile);
+                FileUtils.writeStringToFile(outFile, source.replace("echoing", "changed echoing"));
+            }
+        });
+        story.addStep(new Statement() {
+            @Override public void evaluate() throws Throwable {
+                WorkflowRun b = jenkins.getItemByFullName("p", WorkflowJob.class).getBuildByNumber(1);
+                SemaphoreStep.success("wait/1", null);
+                story.j.assertBuildStatus(Result.FAILURE, story.j.waitForCompletion(b));
+                story.j.assertLogContains("changed while Jenkins was restarting", b);
+                story.j.assertLogNotContains("changed echoing", b);
+            }
+        });
+    }
+
+    /**
+     * Starts a build that has used an action from the global repo, and waits for it to reach semaphore wait/1.
+     */
+    private File startPinnedBuild() throws Exception {
+        File dir = new File(repo.workspace,"actions/io/jenkins/plugins/pipelineaction/sources");
+        dir.mkdirs();
+
+        File outFile = new File(dir, "GlobalRepoDemoAction.groovy");
+        FileUtils.copyURLToFile(
+                getClass().getResource("/io/jenkins/plugins/pipelineaction/sources/GlobalRepoDemoAction.groovy"),
+                outFile);
+        globalRepoPipelineActionSet.rebuild();
+
+        WorkflowJob p = jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition(
+                "runPipelineAction(['name':'GlobalRepoDemoAction', pants:'trousers'])\n"
+                        + "semaphore 'wait'\n"
+                        + "runPipelineAction(['name':'GlobalRepoDemoAction', shirts:'polos'])\n"
+        ));
+
+        WorkflowRun b = p.scheduleBuild2(0).getStartCondition().get();
+        SemaphoreStep.waitForStart("wait/1", b);
+        story.j.assertLogContains("echoing pants == trousers", b);
+        return outFile;
+    }
 }
@@ -0,0 +1,194 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.jenkins.plugins.pipelineaction.summary;
+
+import hudson.model.Result;
+import io.jenkins.plugins.pipelineaction.PipelineActionType;
+import io.jenkins.plugins.pipelineaction.policy.ActionScheduler;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.cps.nodes.StepAtomNode;
+import org.jenkinsci.plugins.workflow.cps.nodes.StepStartNode;
+import org.jenkinsci.plugins.workflow.graph.FlowGraphWalker;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ActionSummaryTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private static List<ActionSummary> summaries(WorkflowRun b) {
+        List<ActionSummary> summaries = new ArrayList<ActionSummary>();
+        for (FlowNode n : new FlowGraphWalker(b.getExecution())) {
+            ActionSummary s = n.getAction(ActionSummary.class);
+            if (s != null) {
+                summaries.add(s);
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Counts the flow nodes of the given steps, including both start nodes of blocks.
+     */
+    private static int steps(WorkflowRun b, String... functionNames) {
+        List<String> names = Arrays.asList(functionNames);
+        int count = 0;
+        for (FlowNode n : new FlowGraphWalker(b.getExecution())) {
+            StepDescriptor d = n instanceof StepAtomNode ? ((StepAtomNode) n).getDescriptor()
+                    : n instanceof StepStartNode ? ((StepStartNode) n).getDescriptor() : null;
+            if (d != null && names.contains(d.getFunctionName())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int nodes(WorkflowRun b) {
+        int count = 0;
+        for (FlowNode n : new FlowGraphWalker(b.getExecution())) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void lightModeSummarizesAction() throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("node {\n"
+                + "  runPipelineAction([name: 'script', script: 'echo hello', light: true])\n"
+                + "  runPipelineAction([name: 'script', script: 'echo unsummarized'])\n"
+                + "}"));
+
+        WorkflowRun b = j.buildAndAssertSuccess(p);
+        List<ActionSummary> summaries = summaries(b);
+        assertEquals(1, summaries.size());
+        assertEquals("script", summaries.get(0).getAction());
+        assertEquals("SUCCESS", summaries.get(0).getResult());
+        assertTrue(summaries.get(0).getDurationMillis() >= 0);
+    }
+
+    @Test
+    public void failureIsSummarized() throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("node {\n"
+                + "  runPipelineAction([name: 'script', script: 'exit 1', light: true])\n"
+                + "}"));
+
+        WorkflowRun b = j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0).get());
+        List<ActionSummary> summaries = summaries(b);
+        assertEquals(1, summaries.size());
+        assertTrue(summaries.get(0).getResult().startsWith("FAILURE: "));
+    }
+
+    @Test
+    public void lightModeReleasesSlot() throws Exception {
+        int origMaxRunning = ActionScheduler.MAX_RUNNING;
+        ActionScheduler.MAX_RUNNING = 1;
+        try {
+            WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+            p.setDefinition(new CpsFlowDefinition("node {\n"
+                    + "  runPipelineAction([name: 'script', script: 'echo first', light: true])\n"
+                    + "  runPipelineAction([name: 'script', script: 'echo second', light: true])\n"
+                    + "}"));
+
+            WorkflowRun b = j.buildAndAssertSuccess(p);
+            j.assertLogContains("second", b);
+            assertEquals(2, summaries(b).size());
+            assertEquals(0, ActionScheduler.get().getRunning(PipelineActionType.STANDARD));
+        } finally {
+            ActionScheduler.MAX_RUNNING = origMaxRunning;
+        }
+    }
+
+    @Test
+    public void lightModeReplacesBookkeepingSteps() throws Exception {
+        int origMaxRunning = ActionScheduler.MAX_RUNNING;
+        ActionScheduler.MAX_RUNNING = 1;
+        try {
+            WorkflowRun normal = flakyActionBuild("normal", false);
+            WorkflowRun light = flakyActionBuild("light", true);
+
+            // Both runs retried the action once...
+            j.assertLogContains("retrying in 0s (attempt 1 of 2)", normal);
+            j.assertLogContains("retrying in 0s (attempt 1 of 2)", light);
+            assertEquals(2, steps(normal, "sh"));
+            assertEquals(2, steps(light, "sh"));
+
+            // ...but in light mode, the summary block took the slot, timed the attempts and waited between them.
+            assertTrue(steps(normal, "pipelineActionSlot", "timeout", "sleep", "echo") > 0);
+            assertEquals(0, steps(light, "pipelineActionSlot", "timeout", "sleep", "echo"));
+            assertTrue(nodes(light) < nodes(normal));
+
+            List<ActionSummary> summaries = summaries(light);
+            assertEquals(1, summaries.size());
+            assertEquals("SUCCESS", summaries.get(0).getResult());
+            assertEquals(0, ActionScheduler.get().getRunning(PipelineActionType.STANDARD));
+        } finally {
+            ActionScheduler.MAX_RUNNING = origMaxRunning;
+        }
+    }
+
+    @Test
+    public void lightModeTimesOutAttempts() throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition("runPipelineAction([name: 'semaphoreWaiter', light: true,\n"
+                + "                   policy: [timeout: 1, retries: 1, backoff: 0]])\n"
+                + "echo 'not reached'"));
+
+        WorkflowRun b = p.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("block/1", b);
+        SemaphoreStep.waitForStart("block/2", b);
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(b));
+        j.assertLogContains("timed out after 1s", b);
+        j.assertLogContains("retrying in 0s (attempt 1 of 2)", b);
+        j.assertLogNotContains("not reached", b);
+        assertEquals("ABORTED", summaries(b).get(0).getResult());
+    }
+
+    /**
+     * Runs an action that fails once, with a timeout and a retry, in a build of its own.
+     */
+    private WorkflowRun flakyActionBuild(String name, boolean light) throws Exception {
+        WorkflowJob p = j.jenkins.createProject(WorkflowJob.class, name);
+        p.setDefinition(new CpsFlowDefinition("node {\n"
+                + "  deleteDir()\n"
+                + "  runPipelineAction([name: 'script', script: 'test -f marker || (touch marker; exit 1)',\n"
+                + "                     policy: [timeout: 60, retries: 1, backoff: 0], light: " + light + "])\n"
+                + "}"));
+        return j.buildAndAssertSuccess(p);
+    }
+}